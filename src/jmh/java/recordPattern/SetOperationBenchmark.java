@@ -0,0 +1,146 @@
+package recordPattern;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecordPatternSampleの集合操作と分類のベンチマーク.
+ * <pre>
+ *     レコード群は、PrimaryKey順のTreeSetで保持する。
+ *     Record#compareTo(age, name順)のTreeSetでは、age・nameの組み合わせ数までしか要素が入らず、
+ *     データ件数を変えても計測にならないため。
+ *     gcプロファイラ(build.gradleで指定)で、操作ごとのアロケーションレートも計測する。
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class SetOperationBenchmark {
+
+    public enum KeyDistribution {
+        // マスターとリクエストのPrimaryKeyの並びが無相関
+        RANDOM,
+        // PrimaryKeyが連番で、マスターとリクエストで並びが揃っている
+        SEQUENTIAL,
+        // RANDOMに加え、更新をマスターの先頭側のキーに偏らせる(Zipf分布、指数1)
+        ZIPF
+    }
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    // マスターと共通のPrimaryKeyを持つリクエストのうち、項目を変更する割合
+    @Param({"0.1", "0.5"})
+    public double updateRatio;
+
+    @Param({"RANDOM", "SEQUENTIAL", "ZIPF"})
+    public KeyDistribution keyDistribution;
+
+    private SortedSet<Record> masterRecords;
+    private SortedSet<Record> requestRecords;
+    private RecordPatternSample sample;
+    private Set<Record> union;
+    private RecordIndex masterIndex;
+    private RecordIndex requestIndex;
+    // 和集合の要素ごとに、PrimaryKeyが一致するマスター・リクエストのレコードを並べたもの(存在しない場合null)
+    private Record[] pairedMasters;
+    private Record[] pairedRequests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // マスターの半分をリクエストと共通のPrimaryKeyとし、残り半分をリクエストの新規データとする
+        Workload workload = WorkloadGenerator.builder()
+                .seed(42)
+                .masterSize(size)
+                .newRatio(0.5)
+                .updateRatio(updateRatio * 0.5)
+                .deleteRatio(0.5)
+                .zipfExponent(keyDistribution == KeyDistribution.ZIPF ? 1.0 : 0)
+                .sequentialKeys(keyDistribution == KeyDistribution.SEQUENTIAL)
+                .build()
+                .generate();
+        masterRecords = new TreeSet<>(Record.PRIMARY_KEY_ORDER);
+        masterRecords.addAll(workload.getMasterRecords());
+        requestRecords = new TreeSet<>(Record.PRIMARY_KEY_ORDER);
+        requestRecords.addAll(workload.getRequestRecords());
+
+        sample = new RecordPatternSample(masterRecords, requestRecords);
+        union = sample.getPlusSet(masterRecords, requestRecords);
+        masterIndex = RecordIndex.of(masterRecords);
+        requestIndex = RecordIndex.of(requestRecords);
+        pairedMasters = new Record[union.size()];
+        pairedRequests = new Record[union.size()];
+        int i = 0;
+        for (Record e : union) {
+            pairedMasters[i] = masterIndex.get(e.getPrimaryKey());
+            pairedRequests[i] = requestIndex.get(e.getPrimaryKey());
+            i++;
+        }
+    }
+
+    @Benchmark
+    public Set<Record> plusSet() {
+        return sample.getPlusSet(masterRecords, requestRecords);
+    }
+
+    @Benchmark
+    public Set<Record> subtractSetNew() {
+        return sample.getSubtractSet(requestRecords, masterRecords);
+    }
+
+    @Benchmark
+    public Set<Record> subtractSetDelete() {
+        return sample.getSubtractSet(masterRecords, requestRecords);
+    }
+
+    /**
+     * getUpdateSetのコスト(コピー、ModifiedRecordの生成、差集合)の計測用。結果の件数は分類の UPDATE 件数と一致しない
+     * <pre>
+     *     入力のPrimaryKey順は引き継がれるため、入力が縮退することはない。
+     *     ただし差集合はPKを含まないModifiedRecordの等価性で取るため、age・nameの組み合わせが出揃う件数では
+     *     結果はほぼ空になる。更新件数の正しさは changeClassifier で確認すること。
+     * </pre>
+     */
+    @Benchmark
+    public Set<Record> updateSet() {
+        return sample.getUpdateSet(masterRecords, requestRecords);
+    }
+
+    @Benchmark
+    public Set<Record> sameSet() {
+        return sample.getSameSet(masterRecords, requestRecords);
+    }
+
+    /**
+     * exec()の、和集合の要素ごとの分類ループ（ログ出力を除く）
+     */
+    @Benchmark
+    public void classifyEach(Blackhole blackhole) {
+        for (Record e : union) {
+            blackhole.consume(sample.getModifiedPattern(
+                    sample.searchSameRecord(masterIndex, e),
+                    sample.searchSameRecord(requestIndex, e)));
+        }
+    }
+
+    /**
+     * 組み合わせ済みのレコードの分類のみ。gcプロファイラのgc.alloc.rate.normが0 B/opとなること
+     */
+    @Benchmark
+    public void classifyPaired(Blackhole blackhole) {
+        for (int i = 0; i < pairedMasters.length; i++) {
+            blackhole.consume(sample.getModifiedPattern(pairedMasters[i], pairedRequests[i]));
+        }
+    }
+
+    @Benchmark
+    public ClassifyResult changeClassifier() {
+        return new ChangeClassifier().classify(masterRecords, requestRecords);
+    }
+}
@@ -0,0 +1,181 @@
+package columnPattern;
+
+import columnPattern.Column.ModifiedPattern;
+import columnPattern.Column.RecordKey;
+import recordPattern.NameDictionary;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * 列指向のレコード群.
+ * <pre>
+ *     1行を1オブジェクトで保持する{@link Record}と異なり、項目ごとにプリミティブ配列で保持する。
+ *     ・PK：UUIDの上位64bit・下位64bitの2つのlong
+ *     ・age：int と null のビットマップ（値域のすべてのintを年齢として保持できるよう、nullは値と別に持つ）
+ *     ・name：{@link NameDictionary}のコード（nullは{@link NameDictionary#NULL_CODE}）
+ *     ・マスター更新パターン：{@link ModifiedPattern}の序数のbyte（未分類は{@link #NO_STATUS}）
+ * </pre>
+ */
+public class RecordBatch {
+    public static final byte NO_STATUS = -1;
+
+    private final NameDictionary dictionary;
+    private long[] keyMostSigBits;
+    private long[] keyLeastSigBits;
+    private int[] ages;
+    private final BitSet nullAges = new BitSet();
+    private int[] nameCodes;
+    private byte[] statuses;
+    private int size;
+
+    public RecordBatch(int capacity) {
+        this(capacity, new NameDictionary());
+    }
+
+    /**
+     * @param capacity   初期容量
+     * @param dictionary 名前列の辞書。比較するバッチ同士で共有すると、名前の比較がコードの比較になる。
+     *                   順序保存の辞書の場合、定義域外の名前は追加できない
+     */
+    public RecordBatch(int capacity, NameDictionary dictionary) {
+        int initialCapacity = Math.max(capacity, 1);
+        this.dictionary = dictionary;
+        this.keyMostSigBits = new long[initialCapacity];
+        this.keyLeastSigBits = new long[initialCapacity];
+        this.ages = new int[initialCapacity];
+        this.nameCodes = new int[initialCapacity];
+        this.statuses = new byte[initialCapacity];
+    }
+
+    /**
+     * 行を追加する.
+     *
+     * @param record レコード
+     * @return 追加した行番号
+     */
+    public int add(Record record) {
+        return add(UUID.fromString(record.getPrimaryKey()), record.getAge(), record.getName());
+    }
+
+    /**
+     * 行を追加する.
+     *
+     * @param primaryKey PK
+     * @param age        年齢
+     * @param name       名前
+     * @return 追加した行番号
+     */
+    public int add(UUID primaryKey, Integer age, String name) {
+        int nameCode = dictionary.encode(name);
+        if (nameCode == NameDictionary.UNKNOWN_CODE) {
+            throw new IllegalArgumentException("name is not in the dictionary: " + name);
+        }
+        if (size == ages.length) {
+            grow();
+        }
+        int row = size++;
+        keyMostSigBits[row] = primaryKey.getMostSignificantBits();
+        keyLeastSigBits[row] = primaryKey.getLeastSignificantBits();
+        ages[row] = age != null ? age : 0;
+        nullAges.set(row, age == null);
+        nameCodes[row] = nameCode;
+        statuses[row] = NO_STATUS;
+        return row;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NameDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public long getKeyMostSigBits(int row) {
+        return keyMostSigBits[row];
+    }
+
+    public long getKeyLeastSigBits(int row) {
+        return keyLeastSigBits[row];
+    }
+
+    public UUID getPrimaryKey(int row) {
+        return new UUID(keyMostSigBits[row], keyLeastSigBits[row]);
+    }
+
+    /**
+     * @return 年齢。nullの場合0（{@link #isAgeNull}で判定する）
+     */
+    public int getAgeAsInt(int row) {
+        return ages[row];
+    }
+
+    public Integer getAge(int row) {
+        return nullAges.get(row) ? null : ages[row];
+    }
+
+    public boolean isAgeNull(int row) {
+        return nullAges.get(row);
+    }
+
+    public int getNameCode(int row) {
+        return nameCodes[row];
+    }
+
+    public String getName(int row) {
+        return dictionary.decode(nameCodes[row]);
+    }
+
+    /**
+     * @return マスター更新パターン。未分類の場合null
+     */
+    public ModifiedPattern getStatus(int row) {
+        return statuses[row] == NO_STATUS ? null : ModifiedPattern.values()[statuses[row]];
+    }
+
+    public void setStatus(int row, ModifiedPattern status) {
+        statuses[row] = (byte) status.ordinal();
+    }
+
+    public void clearStatus(int row) {
+        statuses[row] = NO_STATUS;
+    }
+
+    /**
+     * 行のPKとマスター更新パターンを得る.
+     *
+     * @param row 行番号
+     * @return レコードキー
+     */
+    public RecordKey getRecordKey(int row) {
+        RecordKey recordKey = new RecordKey();
+        recordKey.setUuid(getPrimaryKey(row));
+        recordKey.setModifiedPattern(getStatus(row));
+        return recordKey;
+    }
+
+    /**
+     * 行をレコードに変換する.
+     *
+     * @param row 行番号
+     * @return レコード
+     */
+    public Record toRecord(int row) {
+        Record record = new Record();
+        record.setPrimaryKey(getPrimaryKey(row).toString());
+        record.setAge(getAge(row));
+        record.setName(getName(row));
+        return record;
+    }
+
+    private void grow() {
+        int capacity = ages.length * 2;
+        keyMostSigBits = Arrays.copyOf(keyMostSigBits, capacity);
+        keyLeastSigBits = Arrays.copyOf(keyLeastSigBits, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+    }
+}
@@ -0,0 +1,126 @@
+package columnPattern;
+
+import columnPattern.Column.ModifiedPattern;
+import recordPattern.RecordIndex;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 列指向のマスターバッチとリクエストバッチを、行オブジェクトを生成せずに分類する.
+ * <pre>
+ *     マスターバッチのPK列からオープンアドレス法の索引(行番号の配列)を作り、
+ *     リクエストバッチの各行を照合して、両バッチのマスター更新パターン列に結果を書き込む。
+ *     ・リクエストのみに存在：リクエスト行を NEW
+ *     ・マスターのみに存在：マスター行を DELETE
+ *     ・双方に存在：双方の行を UPDATE または NOTHING
+ *     同じPKの行が複数ある場合は、各バッチで最初の行のみを分類し、以降の行は未分類のままとする
+ *     （{@link recordPattern.ChangeClassifier}と同じ）。
+ * </pre>
+ */
+public class RecordBatchDiff {
+
+    /**
+     * 分類して、両バッチのマスター更新パターン列に結果を書き込む.
+     *
+     * @param master  マスターバッチ
+     * @param request リクエストバッチ
+     * @return マスター更新パターンごとの件数
+     */
+    public Map<ModifiedPattern, Integer> diff(RecordBatch master, RecordBatch request) {
+        int[] counts = new int[ModifiedPattern.values().length];
+        int[] index = buildIndex(master);
+        int mask = index.length - 1;
+        int[] requestIndex = buildIndex(request);
+        int requestMask = requestIndex.length - 1;
+        boolean sameDictionary = master.getDictionary() == request.getDictionary();
+        boolean[] matched = new boolean[master.size()];
+
+        for (int row = 0; row < request.size(); row++) {
+            long msb = request.getKeyMostSigBits(row);
+            long lsb = request.getKeyLeastSigBits(row);
+            // 同じPKの最初の行でなければ分類しない
+            if (find(requestIndex, requestMask, request, msb, lsb) != row) {
+                request.clearStatus(row);
+                continue;
+            }
+            int masterRow = find(index, mask, master, msb, lsb);
+
+            ModifiedPattern pattern;
+            if (masterRow < 0) {
+                pattern = ModifiedPattern.NEW;
+            } else {
+                pattern = sameValues(master, masterRow, request, row, sameDictionary)
+                        ? ModifiedPattern.NOTHING : ModifiedPattern.UPDATE;
+                master.setStatus(masterRow, pattern);
+                matched[masterRow] = true;
+            }
+            request.setStatus(row, pattern);
+            counts[pattern.ordinal()]++;
+        }
+
+        // 照合されなかったマスター行(同じPKの2行目以降を除く)が削除
+        for (int row = 0; row < master.size(); row++) {
+            if (matched[row]) {
+                continue;
+            }
+            if (find(index, mask, master, master.getKeyMostSigBits(row), master.getKeyLeastSigBits(row)) == row) {
+                master.setStatus(row, ModifiedPattern.DELETE);
+                counts[ModifiedPattern.DELETE.ordinal()]++;
+            } else {
+                master.clearStatus(row);
+            }
+        }
+
+        Map<ModifiedPattern, Integer> result = new EnumMap<>(ModifiedPattern.class);
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            result.put(pattern, counts[pattern.ordinal()]);
+        }
+        return result;
+    }
+
+    private static boolean sameValues(RecordBatch master, int masterRow, RecordBatch request, int requestRow,
+                                      boolean sameDictionary) {
+        if (master.isAgeNull(masterRow) != request.isAgeNull(requestRow)
+                || master.getAgeAsInt(masterRow) != request.getAgeAsInt(requestRow)) {
+            return false;
+        }
+        if (sameDictionary) {
+            return master.getNameCode(masterRow) == request.getNameCode(requestRow);
+        }
+        String masterName = master.getName(masterRow);
+        return masterName == null ? request.getName(requestRow) == null : masterName.equals(request.getName(requestRow));
+    }
+
+    /**
+     * PKから行番号+1を引く索引を作る（0は空きスロット）.
+     */
+    private static int[] buildIndex(RecordBatch batch) {
+        int capacity = Integer.highestOneBit(Math.max(batch.size() * 2, 16) - 1) << 1;
+        int[] index = new int[capacity];
+        int mask = capacity - 1;
+        for (int row = 0; row < batch.size(); row++) {
+            int slot = RecordIndex.hash(batch.getKeyMostSigBits(row), batch.getKeyLeastSigBits(row)) & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = row + 1;
+        }
+        return index;
+    }
+
+    /**
+     * @return 行番号。存在しない場合-1
+     */
+    private static int find(int[] index, int mask, RecordBatch batch, long msb, long lsb) {
+        int slot = RecordIndex.hash(msb, lsb) & mask;
+        while (index[slot] != 0) {
+            int row = index[slot] - 1;
+            if (batch.getKeyMostSigBits(row) == msb && batch.getKeyLeastSigBits(row) == lsb) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,77 @@
+package recordPattern;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 更新の反映結果。マスター更新パターンごとの件数と所要時間.
+ * <pre>
+ *     パターンごとの所要時間は書き込みのみで、確定(コミットなど)にかかる時間は{@link #getFlushNanos()}で別に持つ。
+ * </pre>
+ */
+public class ApplyReport {
+    private final Map<ModifiedPattern, Long> rows = new EnumMap<>(ModifiedPattern.class);
+    private final Map<ModifiedPattern, Long> elapsedNanos = new EnumMap<>(ModifiedPattern.class);
+    private long flushNanos;
+
+    void add(ModifiedPattern pattern, int count, long nanos) {
+        rows.merge(pattern, (long) count, Long::sum);
+        elapsedNanos.merge(pattern, nanos, Long::sum);
+    }
+
+    void addFlush(long nanos) {
+        flushNanos += nanos;
+    }
+
+    public long getRows(ModifiedPattern pattern) {
+        return rows.getOrDefault(pattern, 0L);
+    }
+
+    public long getElapsedNanos(ModifiedPattern pattern) {
+        return elapsedNanos.getOrDefault(pattern, 0L);
+    }
+
+    /**
+     * @param pattern マスター更新パターン
+     * @return 1秒あたりの反映件数。反映していない場合0
+     */
+    public double getRowsPerSecond(ModifiedPattern pattern) {
+        long nanos = getElapsedNanos(pattern);
+        return nanos == 0 ? 0 : getRows(pattern) * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    /**
+     * @return 確定にかかった時間
+     */
+    public long getFlushNanos() {
+        return flushNanos;
+    }
+
+    /**
+     * @return 全パターンの書き込みと確定を合わせた、1秒あたりの反映件数。反映していない場合0
+     */
+    public double getTotalRowsPerSecond() {
+        long totalRows = 0;
+        long nanos = flushNanos;
+        for (ModifiedPattern pattern : rows.keySet()) {
+            totalRows += getRows(pattern);
+            nanos += getElapsedNanos(pattern);
+        }
+        return nanos == 0 ? 0 : totalRows * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ApplyReport{");
+        String separator = "";
+        for (ModifiedPattern pattern : rows.keySet()) {
+            builder.append(separator).append(String.format("%s=%d rows (%.1f rows/s)",
+                    pattern, getRows(pattern), getRowsPerSecond(pattern)));
+            separator = ", ";
+        }
+        builder.append(separator).append(String.format("flush=%.1f ms, total=%.1f rows/s",
+                flushNanos / (double) TimeUnit.MILLISECONDS.toNanos(1), getTotalRowsPerSecond()));
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,92 @@
+package recordPattern;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 共有の読み取り専用マスターに対して、多数のリクエストレコード群を並行に分類する.
+ * <pre>
+ *     マスターの索引は一度だけ構築し、すべてのリクエストレコード群で共有する。
+ *     リクエストレコード群ごとに1タスクとしてexecutorで分類し、結果を{@link CompletableFuture}で返す。
+ *     既定のexecutorは、仮想スレッドが使える実行環境ではタスクごとに仮想スレッドを起動し、
+ *     使えない場合はCPUコア数のスレッドを持つ固定サイズのスレッドプールとする。
+ *     分類はCPU律速のため、いずれの場合も同時に分類するタスク数はおおむねコア数に制限される。
+ *     マスターは変更しない({@code apply=false}で分類する)ため、タスク間でマスターを共有できる。
+ *     分類結果の反映は呼び出し側で行うこと。
+ * </pre>
+ */
+public class BatchDiffService implements AutoCloseable {
+    private final MasterSnapshot master;
+    private final ExecutorService executor;
+
+    public BatchDiffService(Collection<Record> masterRecords) {
+        this(masterRecords, newPerTaskExecutor());
+    }
+
+    /**
+     * @param masterRecords マスターレコード群
+     * @param executor      分類を行うexecutor。{@link #close()}でシャットダウンする
+     */
+    public BatchDiffService(Collection<Record> masterRecords, ExecutorService executor) {
+        this.master = new MasterSnapshot(masterRecords);
+        this.executor = executor;
+    }
+
+    /**
+     * リクエストレコード群を差分として分類する。DELETE は判定しない.
+     *
+     * @param requestRecords リクエストレコード群
+     * @return 分類結果
+     * @see MasterSnapshot#classify(Iterable, boolean)
+     */
+    public CompletableFuture<ClassifyResult> submit(Collection<Record> requestRecords) {
+        return CompletableFuture.supplyAsync(() -> master.classify(requestRecords, false), executor);
+    }
+
+    /**
+     * リクエストレコード群をマスターのあるべき全件として分類する.
+     *
+     * @param requestRecords リクエストレコード群
+     * @return 分類結果
+     * @see MasterSnapshot#classifyFull(Iterable, boolean)
+     */
+    public CompletableFuture<ClassifyResult> submitFull(Collection<Record> requestRecords) {
+        return CompletableFuture.supplyAsync(() -> master.classifyFull(requestRecords, false), executor);
+    }
+
+    /**
+     * 複数のリクエストレコード群を、それぞれ差分として分類する.
+     *
+     * @param requestBatches リクエストレコード群のリスト
+     * @return リクエストレコード群ごとの分類結果
+     */
+    public List<CompletableFuture<ClassifyResult>> submitAll(Collection<? extends Collection<Record>> requestBatches) {
+        List<CompletableFuture<ClassifyResult>> futures = new ArrayList<>(requestBatches.size());
+        requestBatches.forEach(e -> futures.add(submit(e)));
+        return futures;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * タスクごとに仮想スレッドを起動するexecutorを得る。仮想スレッドが使えない場合はCPUコア数の固定サイズのスレッドプールを得る.
+     *
+     * @return executor
+     */
+    static ExecutorService newPerTaskExecutor() {
+        try {
+            // コンパイル対象のJDKに依存しないよう、リフレクションで取得する
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package recordPattern;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.util.Set;
+
+/**
+ * 分類済みのマスター更新.
+ * <pre>
+ *     NEWの場合はマスターレコードが、DELETEの場合はリクエストレコードがnullとなる。
+ *     UPDATEの場合は、値が異なる項目を{@link RecordField}のビットマスクで保持する。
+ *     部分更新を行う場合は、このマスクに含まれる項目のみを書き込めばよい。
+ * </pre>
+ */
+@Value
+@AllArgsConstructor
+public class Change {
+    private ModifiedPattern modifiedPattern;
+    private Record masterRecord;
+    private Record requestRecord;
+    // 値が異なる項目のビットマスク。UPDATE以外は0
+    private int changedFields;
+
+    public Change(ModifiedPattern modifiedPattern, Record masterRecord, Record requestRecord) {
+        this(modifiedPattern, masterRecord, requestRecord, 0);
+    }
+
+    /**
+     * 更新後の状態を表すレコードを得る。DELETEの場合は削除対象のマスターレコードを返す.
+     *
+     * @return レコード
+     */
+    public Record getRecord() {
+        return requestRecord != null ? requestRecord : masterRecord;
+    }
+
+    /**
+     * @return 値が異なる項目の集合
+     */
+    public Set<RecordField> getChangedFieldSet() {
+        return RecordField.setOf(changedFields);
+    }
+
+    public boolean isChanged(RecordField field) {
+        return field.isIn(changedFields);
+    }
+}
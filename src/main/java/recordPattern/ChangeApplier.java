@@ -0,0 +1,67 @@
+package recordPattern;
+
+import java.util.List;
+
+/**
+ * 分類結果をマスターの書き込み先にバッチ単位で反映する.
+ * <pre>
+ *     DELETE、UPDATE、NEW の順に、それぞれ最大{@code batchSize}件ずつ書き込み先に渡す。
+ *     NO_MODIFIED は反映しない。
+ *     すべての書き込みが成功した場合にのみ{@link MasterSink#flush()}で確定させる。
+ *     書き込みに失敗した場合は確定させずに例外をそのままスローする。
+ * </pre>
+ */
+public class ChangeApplier {
+    private final int batchSize;
+
+    /**
+     * @param batchSize 1回で書き込み先に渡す最大件数
+     */
+    public ChangeApplier(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 分類結果を反映する.
+     *
+     * @param result 分類結果
+     * @param sink   書き込み先
+     * @return 反映結果
+     */
+    public ApplyReport apply(ClassifyResult result, MasterSink sink) {
+        ApplyReport report = new ApplyReport();
+        apply(ModifiedPattern.DELETE, result.getChanges(ModifiedPattern.DELETE), sink, report);
+        apply(ModifiedPattern.UPDATE, result.getChanges(ModifiedPattern.UPDATE), sink, report);
+        apply(ModifiedPattern.NEW, result.getChanges(ModifiedPattern.NEW), sink, report);
+
+        // 確定(コミットなど)にかかる時間は、パターンごとの所要時間とは別に計る
+        long start = System.nanoTime();
+        sink.flush();
+        report.addFlush(System.nanoTime() - start);
+        return report;
+    }
+
+    private void apply(ModifiedPattern pattern, List<Change> changes, MasterSink sink, ApplyReport report) {
+        for (int from = 0; from < changes.size(); from += batchSize) {
+            List<Change> batch = changes.subList(from, Math.min(from + batchSize, changes.size()));
+            long start = System.nanoTime();
+            switch (pattern) {
+                case NEW:
+                    sink.insert(batch);
+                    break;
+                case UPDATE:
+                    sink.update(batch);
+                    break;
+                case DELETE:
+                    sink.delete(batch);
+                    break;
+                default:
+                    throw new IllegalArgumentException("not applicable: " + pattern);
+            }
+            report.add(pattern, batch.size(), System.nanoTime() - start);
+        }
+    }
+}
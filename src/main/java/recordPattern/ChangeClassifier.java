@@ -0,0 +1,285 @@
+package recordPattern;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * マスターレコード群とリクエストレコード群を一度の走査で NEW/UPDATE/DELETE/NO_MODIFIED に分類する.
+ * <pre>
+ *     マスターレコード群の索引を一度だけ構築し、リクエストレコード群を一度走査して
+ *     NEW/UPDATE/NO_MODIFIED を確定させる。索引のうち照合されなかったレコードが DELETE となる。
+ *     集合演算による分類と異なり、入力のコピーは作らない。
+ *     同じPrimaryKeyのレコードが複数ある場合は、最初のレコードのみを分類対象とする。
+ *     ブルームフィルタを有効にすると、マスターに確実に存在しないリクエストレコードは索引を引かずに NEW とする。
+ *     計測器を指定すると、通知先を指定した分類で、索引の構築・分類・通知の所要時間とパターンごとの件数を記録する。
+ * </pre>
+ */
+public class ChangeClassifier {
+    // ブルームフィルタの偽陽性率。0の場合はブルームフィルタを使わない
+    private final double bloomFalsePositiveRate;
+    private final DiffMetrics metrics;
+
+    public ChangeClassifier() {
+        this(0);
+    }
+
+    /**
+     * @param bloomFalsePositiveRate マスターのPrimaryKeyに対するブルームフィルタの偽陽性率。0の場合は使わない
+     */
+    public ChangeClassifier(double bloomFalsePositiveRate) {
+        this(bloomFalsePositiveRate, DiffMetrics.disabled());
+    }
+
+    /**
+     * @param bloomFalsePositiveRate マスターのPrimaryKeyに対するブルームフィルタの偽陽性率。0の場合は使わない
+     * @param metrics                計測器
+     */
+    public ChangeClassifier(double bloomFalsePositiveRate, DiffMetrics metrics) {
+        if (bloomFalsePositiveRate < 0 || bloomFalsePositiveRate >= 1) {
+            throw new IllegalArgumentException("bloomFalsePositiveRate must be in [0, 1): " + bloomFalsePositiveRate);
+        }
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * 分類して、更新パターンごとの結果を得る.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @return 分類結果
+     */
+    public ClassifyResult classify(Collection<Record> masterRecords, Collection<Record> requestRecords) {
+        ClassifyResult result = new ClassifyResult();
+        classify(masterRecords, requestRecords, result::add);
+        return result;
+    }
+
+    /**
+     * 分類して、分類した順に更新を通知する.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(Collection<Record> masterRecords, Collection<Record> requestRecords, Consumer<Change> sink) {
+        long start = metrics.start();
+        RecordIndex masterIndex = RecordIndex.of(masterRecords);
+        PrimaryKeyBloomFilter masterFilter = filterOf(masterRecords);
+        metrics.stop(DiffPhase.INDEX, start);
+
+        classify(masterIndex, masterFilter, requestRecords, sink);
+    }
+
+    /**
+     * 構築済みのマスター索引に対して分類し、分類した順に更新を通知する.
+     *
+     * @param masterIndex    マスターレコード群の索引
+     * @param requestRecords リクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(RecordIndex masterIndex, Iterable<Record> requestRecords, Consumer<Change> sink) {
+        classify(masterIndex, null, requestRecords, sink);
+    }
+
+    /**
+     * 構築済みのマスター索引とブルームフィルタに対して分類し、分類した順に更新を通知する.
+     *
+     * @param masterIndex    マスターレコード群の索引
+     * @param masterFilter   マスターレコード群のPrimaryKeyのブルームフィルタ。nullの場合は使わない
+     * @param requestRecords リクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(RecordIndex masterIndex, PrimaryKeyBloomFilter masterFilter, Iterable<Record> requestRecords,
+                         Consumer<Change> sink) {
+        Iterator<Change> changes = changes(masterIndex, masterFilter, requestRecords);
+        if (!metrics.isEnabled()) {
+            changes.forEachRemaining(sink);
+            return;
+        }
+
+        // 件数は手元で数え、最後にまとめて記録する
+        long[] counts = new long[ModifiedPattern.values().length];
+        long classifyNanos = 0;
+        long emitNanos = 0;
+        long time = System.nanoTime();
+        while (changes.hasNext()) {
+            Change change = changes.next();
+            long classified = System.nanoTime();
+            sink.accept(change);
+            long emitted = System.nanoTime();
+
+            counts[change.getModifiedPattern().ordinal()]++;
+            classifyNanos += classified - time;
+            emitNanos += emitted - classified;
+            time = emitted;
+        }
+        classifyNanos += System.nanoTime() - time;
+
+        metrics.addNanos(DiffPhase.CLASSIFY, classifyNanos);
+        metrics.addNanos(DiffPhase.EMIT, emitNanos);
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            metrics.count(pattern, counts[pattern.ordinal()]);
+        }
+    }
+
+    /**
+     * 分類結果を返すイテレータを得る。分類は要素を取り出すたびに行う.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @return 更新のイテレータ
+     */
+    public Iterator<Change> changes(Collection<Record> masterRecords, Iterable<Record> requestRecords) {
+        return changes(RecordIndex.of(masterRecords), filterOf(masterRecords), requestRecords);
+    }
+
+    /**
+     * 構築済みのマスター索引とブルームフィルタに対する分類結果を返すイテレータを得る.
+     *
+     * @param masterIndex    マスターレコード群の索引
+     * @param masterFilter   マスターレコード群のPrimaryKeyのブルームフィルタ。nullの場合は使わない
+     * @param requestRecords リクエストレコード群
+     * @return 更新のイテレータ
+     */
+    public Iterator<Change> changes(RecordIndex masterIndex, PrimaryKeyBloomFilter masterFilter,
+                                    Iterable<Record> requestRecords) {
+        return new ClassifyIterator(masterIndex, masterFilter, requestRecords.iterator());
+    }
+
+    /**
+     * 分類結果を購読者の要求に応じて発行するパブリッシャーを得る.
+     * <pre>
+     *     索引の構築と分類は、購読者が要求した分だけexecutor上で行う。
+     *     購読者ごとに、入力の先頭から分類し直す。
+     * </pre>
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @param executor       分類と通知を行うexecutor
+     * @return パブリッシャー
+     */
+    public Flow.Publisher<Change> publisher(Collection<Record> masterRecords, Iterable<Record> requestRecords,
+                                            Executor executor) {
+        return new ChangePublisher(() -> changes(masterRecords, requestRecords), executor);
+    }
+
+    private PrimaryKeyBloomFilter filterOf(Collection<Record> masterRecords) {
+        return bloomFalsePositiveRate > 0 ? PrimaryKeyBloomFilter.of(masterRecords, bloomFalsePositiveRate) : null;
+    }
+
+    /**
+     * PrimaryKeyが一致したマスターレコードとリクエストレコードの更新を得る.
+     * <pre>
+     *     項目の比較で得た差分のビットマスクから、UPDATE または NO_MODIFIED を確定させる。
+     * </pre>
+     *
+     * @param masterRecord  マスターレコード
+     * @param requestRecord リクエストレコード
+     * @return UPDATE または NO_MODIFIED の更新
+     */
+    static Change changeOf(Record masterRecord, Record requestRecord) {
+        int changedFields = RecordField.diff(masterRecord, requestRecord);
+        ModifiedPattern pattern = changedFields == 0 ? ModifiedPattern.NO_MODIFIED : ModifiedPattern.UPDATE;
+        return new Change(pattern, masterRecord, requestRecord, changedFields);
+    }
+
+    /**
+     * マスター更新パターンを得る
+     *
+     * @param masterRecord  マスターレコード。存在しない場合null
+     * @param requestRecord リクエストレコード。存在しない場合null
+     * @return マスター更新パターン
+     */
+    public static ModifiedPattern patternOf(Record masterRecord, Record requestRecord) {
+        if (masterRecord != null && requestRecord != null) {
+            // 項目の比較のみで判定し、オブジェクトは生成しない
+            return RecordField.diff(masterRecord, requestRecord) == 0 ? ModifiedPattern.NO_MODIFIED : ModifiedPattern.UPDATE;
+        }
+
+        if (masterRecord == null && requestRecord != null) {
+            return ModifiedPattern.NEW;
+        }
+
+        if (masterRecord != null) {
+            return ModifiedPattern.DELETE;
+        }
+
+        throw new IllegalStateException();
+    }
+
+    /**
+     * リクエストレコード群を走査して NEW/UPDATE/NO_MODIFIED を返し、
+     * 走査後に照合されなかったマスターレコードを DELETE として返すイテレータ.
+     */
+    private static class ClassifyIterator implements Iterator<Change> {
+        private final RecordIndex masterIndex;
+        private final PrimaryKeyBloomFilter masterFilter;
+        private final Iterator<Record> requestRecords;
+        private final boolean[] matched;
+        private final RecordIndex newRecords = new RecordIndex();
+        // DELETE を探すマスター索引のスロット位置
+        private int deleteSlot;
+        private Change next;
+
+        ClassifyIterator(RecordIndex masterIndex, PrimaryKeyBloomFilter masterFilter, Iterator<Record> requestRecords) {
+            this.masterIndex = masterIndex;
+            this.masterFilter = masterFilter;
+            this.requestRecords = requestRecords;
+            this.matched = new boolean[masterIndex.capacity()];
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = classifyNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Change next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Change change = next;
+            next = null;
+            return change;
+        }
+
+        private Change classifyNext() {
+            while (requestRecords.hasNext()) {
+                Record requestRecord = requestRecords.next();
+                UUID key = requestRecord.getPrimaryKey();
+                int slot = masterFilter == null || masterFilter.mightContain(key) ? masterIndex.indexOf(key) : -1;
+                if (slot < 0) {
+                    if (newRecords.putIfAbsent(requestRecord)) {
+                        return new Change(ModifiedPattern.NEW, null, requestRecord);
+                    }
+                    continue;
+                }
+                if (matched[slot]) {
+                    continue;
+                }
+                matched[slot] = true;
+
+                return changeOf(masterIndex.recordAt(slot), requestRecord);
+            }
+
+            while (deleteSlot < matched.length) {
+                int slot = deleteSlot++;
+                Record masterRecord = masterIndex.recordAt(slot);
+                if (masterRecord != null && !matched[slot]) {
+                    return new Change(ModifiedPattern.DELETE, masterRecord, null);
+                }
+            }
+            return null;
+        }
+    }
+}
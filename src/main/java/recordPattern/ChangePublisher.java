@@ -0,0 +1,148 @@
+package recordPattern;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 分類結果を、購読者の要求数(demand)の分だけ発行するパブリッシャー.
+ * <pre>
+ *     分類結果のイテレータから、購読者が{@link Flow.Subscription#request(long)}で要求した件数だけ取り出して通知する。
+ *     要求がなければ分類も進まないため、処理の遅い購読者が分類を律速し、結果がメモリに溜まることはない。
+ *     （要求数を満たした後は、終端かどうかを確認するために最大1件だけ先に分類する）
+ *     イテレータは購読ごとに{@code changes}から得る。
+ * </pre>
+ */
+public class ChangePublisher implements Flow.Publisher<Change> {
+    private final Supplier<Iterator<Change>> changes;
+    private final Executor executor;
+
+    public ChangePublisher(Supplier<Iterator<Change>> changes) {
+        this(changes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param changes  購読ごとに分類結果のイテレータを返す
+     * @param executor 分類と通知を行うexecutor
+     */
+    public ChangePublisher(Supplier<Iterator<Change>> changes, Executor executor) {
+        this.changes = changes;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Change> subscriber) {
+        Objects.requireNonNull(subscriber);
+        ChangeSubscription subscription = new ChangeSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class ChangeSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Change> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // 通知処理の実行要求数。0→1になったスレッドのみが通知処理をexecutorに投入する
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        // 不正な要求数による例外。通知は他の通知と直列にするため、通知処理の中で行う
+        private volatile Throwable requestError;
+        private Iterator<Change> iterator;
+
+        ChangeSubscription(Flow.Subscriber<? super Change> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                requestError = new IllegalArgumentException("request must be positive: " + n);
+                schedule();
+                return;
+            }
+            demand.getAndUpdate(current -> {
+                long next = current + n;
+                return next < 0 ? Long.MAX_VALUE : next;
+            });
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (pending.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                long requested = demand.get();
+                long emitted = 0;
+                while (true) {
+                    // 要求数に達した後も終端を確認し、要求数ちょうどで終わる場合に完了を通知する
+                    if (terminated()) {
+                        return;
+                    }
+                    if (emitted == requested) {
+                        break;
+                    }
+                    Change change;
+                    try {
+                        change = iterator.next();
+                    } catch (RuntimeException e) {
+                        cancelled = true;
+                        subscriber.onError(e);
+                        return;
+                    }
+                    subscriber.onNext(change);
+                    emitted++;
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    demand.addAndGet(-emitted);
+                }
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * 取消、不正な要求、分類の終端、分類中の例外を判定し、該当すれば終了を通知する.
+         *
+         * @return 通知を終えた場合true
+         */
+        private boolean terminated() {
+            if (cancelled) {
+                return true;
+            }
+            if (requestError != null) {
+                cancelled = true;
+                subscriber.onError(requestError);
+                return true;
+            }
+            try {
+                if (iterator == null) {
+                    iterator = changes.get();
+                }
+                if (iterator.hasNext()) {
+                    return false;
+                }
+                cancelled = true;
+                subscriber.onComplete();
+            } catch (RuntimeException e) {
+                cancelled = true;
+                subscriber.onError(e);
+            }
+            return true;
+        }
+    }
+}
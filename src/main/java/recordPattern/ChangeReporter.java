@@ -0,0 +1,127 @@
+package recordPattern;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 更新をレコードごとにログ出力せず、パターンごとの件数と先頭N件の例にまとめて出力する.
+ * <pre>
+ *     更新の詳細が必要な場合は変更ファイルを指定する。変更ファイルにはすべての更新を
+ *     「パターン(TAB)マスターレコード(TAB)リクエストレコード」の形式でバッファリングして書き出す。
+ *     レコードは「UUID,年齢,名前」で、存在しない側は空とする。
+ *     スレッドセーフではない。
+ * </pre>
+ */
+public class ChangeReporter implements Consumer<Change>, Closeable {
+    private final Logger logger;
+    private final int samplesPerPattern;
+    private final BufferedWriter changeFile;
+    private final long[] counts = new long[ModifiedPattern.values().length];
+    private final Map<ModifiedPattern, List<Change>> samples = new EnumMap<>(ModifiedPattern.class);
+
+    /**
+     * @param logger            出力先のロガー
+     * @param samplesPerPattern パターンごとに出力する例の件数
+     */
+    public ChangeReporter(Logger logger, int samplesPerPattern) throws IOException {
+        this(logger, samplesPerPattern, null);
+    }
+
+    /**
+     * @param logger            出力先のロガー
+     * @param samplesPerPattern パターンごとに出力する例の件数
+     * @param changeFile        すべての更新を書き出す変更ファイル。nullの場合は書き出さない
+     */
+    public ChangeReporter(Logger logger, int samplesPerPattern, Path changeFile) throws IOException {
+        if (samplesPerPattern < 0) {
+            throw new IllegalArgumentException("samplesPerPattern must not be negative: " + samplesPerPattern);
+        }
+        this.logger = Objects.requireNonNull(logger);
+        this.samplesPerPattern = samplesPerPattern;
+        this.changeFile = changeFile == null ? null : Files.newBufferedWriter(changeFile, StandardCharsets.UTF_8);
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            samples.put(pattern, new ArrayList<>());
+        }
+    }
+
+    @Override
+    public void accept(Change change) {
+        ModifiedPattern pattern = change.getModifiedPattern();
+        counts[pattern.ordinal()]++;
+        List<Change> patternSamples = samples.get(pattern);
+        if (patternSamples.size() < samplesPerPattern) {
+            patternSamples.add(change);
+        }
+        if (changeFile != null) {
+            write(change);
+        }
+    }
+
+    public long count(ModifiedPattern pattern) {
+        return counts[pattern.ordinal()];
+    }
+
+    public List<Change> getSamples(ModifiedPattern pattern) {
+        return Collections.unmodifiableList(samples.get(pattern));
+    }
+
+    /**
+     * パターンごとの件数と例をログ出力する.
+     */
+    public void report() {
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            logger.info("{}: {} records", pattern, count(pattern));
+            for (Change change : samples.get(pattern)) {
+                logger.info("{}\t master:{},\t request:{}", pattern,
+                        format(change.getMasterRecord()), format(change.getRequestRecord()));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (changeFile != null) {
+            changeFile.close();
+        }
+    }
+
+    private void write(Change change) {
+        try {
+            changeFile.write(change.getModifiedPattern().name());
+            changeFile.write('\t');
+            writeRecord(change.getMasterRecord());
+            changeFile.write('\t');
+            writeRecord(change.getRequestRecord());
+            changeFile.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRecord(Record record) throws IOException {
+        if (record == null) {
+            return;
+        }
+        changeFile.write(record.getPrimaryKey().toString());
+        changeFile.write(',');
+        changeFile.write(String.valueOf(record.getAge()));
+        changeFile.write(',');
+        changeFile.write(String.valueOf(record.getName()));
+    }
+
+    private static String format(Record record) {
+        if (record == null) {
+            return "nothing data";
+        }
+        return String.join(",", record.getPrimaryKey().toString(), String.valueOf(record.getAge()), record.getName());
+    }
+}
@@ -0,0 +1,296 @@
+package recordPattern;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * スナップショットと先行書き込みログ(WAL)で永続化するマスターレコード群.
+ * <pre>
+ *     ディレクトリに以下のファイルを置く。
+ *     ・snapshot-{世代}.srf：その世代の開始時点のマスター全件（{@link RecordFileWriter}の形式）
+ *     ・wal-{世代}.log     ：その世代で反映した NEW/UPDATE/DELETE の追記ログ
+ *     更新はWALに追記してからメモリ上の{@link MasterSnapshot}に反映し、{@link #flush()}でWALをディスクに同期する。
+ *     {@link #checkpoint()}で次の世代のスナップショットを書き出し、古い世代のファイルを削除する。
+ *     再起動時は最新のスナップショットを読み込み、同じ世代のWALを再生するだけで復旧する。
+ *     WALの末尾が書き込み途中で途切れている場合は、そのエントリ以降を破棄する。
+ *     チェックポイントの途中で停止して残った、復旧した世代より古いファイルと書き込み途中のスナップショットは、復旧時に削除する。
+ *     スレッドセーフではない。
+ * </pre>
+ */
+public class CheckpointedMaster implements MasterSink {
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.srf");
+    // 復旧時に削除の対象となる世代のファイル（書き込み途中のスナップショットを含む）
+    private static final Pattern GENERATION_FILE = Pattern.compile("(?:snapshot-(\\d+)\\.srf(?:\\.tmp)?|wal-(\\d+)\\.log)");
+
+    private final Path directory;
+    // この件数の更新をWALに追記するたびに、flush時にチェックポイントを取る。0の場合は自動では取らない
+    private final long checkpointInterval;
+    private final MasterSnapshot snapshot;
+    private long generation;
+    private FileOutputStream walFile;
+    private DataOutputStream wal;
+    private long walEntries;
+
+    private CheckpointedMaster(Path directory, long checkpointInterval, MasterSnapshot snapshot, long generation,
+                               long walEntries) throws IOException {
+        this.directory = directory;
+        this.checkpointInterval = checkpointInterval;
+        this.snapshot = snapshot;
+        this.generation = generation;
+        this.walEntries = walEntries;
+        openWal();
+    }
+
+    public static CheckpointedMaster open(Path directory) throws IOException {
+        return open(directory, 0);
+    }
+
+    /**
+     * ディレクトリから最新の世代を復旧して開く。ファイルがない場合は空のマスターとして開く.
+     *
+     * @param directory          保存先ディレクトリ
+     * @param checkpointInterval この件数の更新ごとにチェックポイントを取る。0の場合は自動では取らない
+     * @return マスター
+     */
+    public static CheckpointedMaster open(Path directory, long checkpointInterval) throws IOException {
+        Files.createDirectories(directory);
+        long generation = latestGeneration(directory);
+
+        List<Record> records = new ArrayList<>();
+        Path snapshotFile = snapshotFile(directory, generation);
+        if (Files.exists(snapshotFile)) {
+            try (RecordFileReader reader = new RecordFileReader(snapshotFile)) {
+                reader.forEach(records::add);
+            }
+        }
+        MasterSnapshot snapshot = new MasterSnapshot(records);
+        long walEntries = replay(walFile(directory, generation), snapshot);
+        deleteStaleFiles(directory, generation);
+        return new CheckpointedMaster(directory, checkpointInterval, snapshot, generation, walEntries);
+    }
+
+    public MasterSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 更新をWALに追記し、マスターに反映する。ディスクへの同期は{@link #flush()}で行う.
+     *
+     * @param change 更新
+     */
+    public void apply(Change change) {
+        if (change.getModifiedPattern() == ModifiedPattern.NO_MODIFIED) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream entry = new DataOutputStream(bytes);
+            entry.writeByte(change.getModifiedPattern().ordinal());
+            RecordIO.write(entry, change.getRecord());
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            wal.writeInt(bytes.size());
+            wal.writeInt((int) crc.getValue());
+            bytes.writeTo(wal);
+        } catch (IOException e) {
+            throw new MasterSinkException("failed to append to write-ahead log in " + directory, e);
+        }
+        snapshot.apply(change);
+        walEntries++;
+    }
+
+    @Override
+    public void insert(List<Change> changes) {
+        changes.forEach(this::apply);
+    }
+
+    @Override
+    public void update(List<Change> changes) {
+        changes.forEach(this::apply);
+    }
+
+    @Override
+    public void delete(List<Change> changes) {
+        changes.forEach(this::apply);
+    }
+
+    /**
+     * WALをディスクに同期する。自動チェックポイントの件数に達していればチェックポイントを取る.
+     */
+    @Override
+    public void flush() {
+        try {
+            wal.flush();
+            walFile.getFD().sync();
+        } catch (IOException e) {
+            throw new MasterSinkException("failed to sync write-ahead log in " + directory, e);
+        }
+        if (checkpointInterval > 0 && walEntries >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * 現在のマスター全件を次の世代のスナップショットとして書き出し、古い世代のファイルを削除する.
+     * <pre>
+     *     スナップショットは一時ファイルに書き込んでディスクに同期し、置き換えた後にディレクトリを同期する。
+     *     古い世代のファイルは、その後にのみ削除する。
+     * </pre>
+     */
+    public void checkpoint() {
+        long next = generation + 1;
+        try {
+            List<Record> records = new ArrayList<>(snapshot.size());
+            snapshot.forEach(records::add);
+            records.sort(Record.PRIMARY_KEY_ORDER);
+
+            Path temp = directory.resolve("snapshot-" + next + ".srf.tmp");
+            try (RecordFileWriter writer = new RecordFileWriter(temp)) {
+                writer.writeAll(records);
+            }
+            FileSync.force(temp);
+            Files.move(temp, snapshotFile(directory, next), StandardCopyOption.ATOMIC_MOVE);
+
+            wal.close();
+            generation = next;
+            walEntries = 0;
+            openWal();
+
+            // 新しい世代のスナップショットとWALがディスク上で確定してから、古い世代を削除する
+            FileSync.forceDirectory(directory);
+            Files.deleteIfExists(walFile(directory, next - 1));
+            Files.deleteIfExists(snapshotFile(directory, next - 1));
+        } catch (IOException e) {
+            throw new MasterSinkException("failed to write checkpoint " + next + " in " + directory, e);
+        }
+    }
+
+    /**
+     * WALを閉じる.
+     * <pre>
+     *     WALの同期とチェックポイントは行わない。{@link #flush()}していない更新は再起動後に残るとは限らない。
+     * </pre>
+     */
+    @Override
+    public void close() {
+        try {
+            // バッファ上の未同期のエントリは書き出さずに破棄する
+            walFile.close();
+        } catch (IOException e) {
+            throw new MasterSinkException("failed to close write-ahead log in " + directory, e);
+        }
+    }
+
+    private void openWal() throws IOException {
+        walFile = new FileOutputStream(walFile(directory, generation).toFile(), true);
+        wal = new DataOutputStream(new BufferedOutputStream(walFile, 1 << 16));
+    }
+
+    /**
+     * WALを再生する。途切れた、または壊れたエントリ以降は切り捨てる.
+     *
+     * @return 再生したエントリ数
+     */
+    private static long replay(Path walFile, MasterSnapshot snapshot) throws IOException {
+        if (!Files.exists(walFile)) {
+            return 0;
+        }
+        long entries = 0;
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(walFile), 1 << 16))) {
+            while (true) {
+                byte[] bytes;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > 1 << 20) {
+                        break;
+                    }
+                    bytes = new byte[length];
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                DataInputStream entry = new DataInputStream(new ByteArrayInputStream(bytes));
+                ModifiedPattern pattern = ModifiedPattern.values()[entry.readByte()];
+                Record record = RecordIO.read(entry);
+                snapshot.apply(pattern == ModifiedPattern.DELETE
+                        ? new Change(pattern, record, null)
+                        : new Change(pattern, null, record));
+
+                entries++;
+                validLength += Integer.BYTES * 2 + bytes.length;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(walFile, StandardOpenOption.WRITE)) {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 復旧した世代より古い世代のファイルと、書き込み途中のスナップショットを削除する.
+     */
+    private static void deleteStaleFiles(Path directory, long generation) throws IOException {
+        List<Path> staleFiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                Matcher matcher = GENERATION_FILE.matcher(name);
+                if (!matcher.matches()) {
+                    return;
+                }
+                long fileGeneration = Long.parseLong(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+                if (fileGeneration < generation || name.endsWith(".tmp")) {
+                    staleFiles.add(file);
+                }
+            });
+        }
+        if (staleFiles.isEmpty()) {
+            return;
+        }
+        for (Path file : staleFiles) {
+            Files.deleteIfExists(file);
+        }
+        FileSync.forceDirectory(directory);
+    }
+
+    private static long latestGeneration(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(e -> SNAPSHOT_FILE.matcher(e.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .mapToLong(e -> Long.parseLong(e.group(1)))
+                    .max()
+                    .orElse(0);
+        }
+    }
+
+    private static Path snapshotFile(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".srf");
+    }
+
+    private static Path walFile(Path directory, long generation) {
+        return directory.resolve("wal-" + generation + ".log");
+    }
+}
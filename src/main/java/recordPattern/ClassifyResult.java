@@ -0,0 +1,67 @@
+package recordPattern;
+
+import java.util.*;
+
+/**
+ * マスター更新パターンごとに分類した結果.
+ */
+public class ClassifyResult {
+    private final Map<ModifiedPattern, List<Change>> changes = new EnumMap<>(ModifiedPattern.class);
+
+    public ClassifyResult() {
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            changes.put(pattern, new ArrayList<>());
+        }
+    }
+
+    void add(Change change) {
+        changes.get(change.getModifiedPattern()).add(change);
+    }
+
+    void addAll(ClassifyResult other) {
+        other.changes.forEach((pattern, list) -> changes.get(pattern).addAll(list));
+    }
+
+    /**
+     * 更新パターンに分類された更新を得る.
+     *
+     * @param pattern マスター更新パターン
+     * @return 更新のリスト
+     */
+    public List<Change> getChanges(ModifiedPattern pattern) {
+        return Collections.unmodifiableList(changes.get(pattern));
+    }
+
+    /**
+     * 更新パターンに分類されたレコードを得る.
+     *
+     * @param pattern マスター更新パターン
+     * @return {@link Change#getRecord()}のリスト
+     */
+    public List<Record> getRecords(ModifiedPattern pattern) {
+        List<Change> list = changes.get(pattern);
+        List<Record> records = new ArrayList<>(list.size());
+        list.forEach(e -> records.add(e.getRecord()));
+        return records;
+    }
+
+    public int count(ModifiedPattern pattern) {
+        return changes.get(pattern).size();
+    }
+
+    /**
+     * 更新パターンごとの件数を得る.
+     *
+     * @return 更新パターンと件数のマップ
+     */
+    public Map<ModifiedPattern, Integer> getCounts() {
+        Map<ModifiedPattern, Integer> counts = new EnumMap<>(ModifiedPattern.class);
+        changes.forEach((pattern, list) -> counts.put(pattern, list.size()));
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassifyResult" + getCounts();
+    }
+}
@@ -0,0 +1,163 @@
+package recordPattern;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 差分処理のフェーズごとの所要時間と、マスター更新パターンごとの件数を計測する.
+ * <pre>
+ *     複数のスレッドから同時に記録できる。
+ *     {@link #disabled()}で得た計測器は何も記録せず、時刻の取得も行わない。
+ *     分類器は件数を手元で数え、処理の終わりにまとめて記録するため、レコードごとの同期は発生しない。
+ *     記録するのは{@link ChangeClassifier}のみである。他の分類器の処理は計測の対象にならない。
+ * </pre>
+ */
+public class DiffMetrics implements DiffMetricsMXBean {
+    private static final DiffMetrics DISABLED = new DiffMetrics(false);
+
+    private final boolean enabled;
+    private final LongAdder[] phaseNanos = adders(DiffPhase.values().length);
+    private final LongAdder[] counts = adders(ModifiedPattern.values().length);
+
+    public DiffMetrics() {
+        this(true);
+    }
+
+    private DiffMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return 何も記録しない計測器
+     */
+    public static DiffMetrics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * フェーズの計測を開始する.
+     *
+     * @return 開始時刻。無効な場合0
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * フェーズの計測を終了し、所要時間を記録する.
+     *
+     * @param phase フェーズ
+     * @param start {@link #start()}で得た開始時刻
+     */
+    public void stop(DiffPhase phase, long start) {
+        if (enabled) {
+            phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+
+    public void addNanos(DiffPhase phase, long nanos) {
+        if (enabled) {
+            phaseNanos[phase.ordinal()].add(nanos);
+        }
+    }
+
+    public void count(ModifiedPattern pattern, long count) {
+        if (enabled) {
+            counts[pattern.ordinal()].add(count);
+        }
+    }
+
+    /**
+     * @return 現時点の計測値
+     */
+    public DiffMetricsSnapshot snapshot() {
+        Map<DiffPhase, Long> nanos = new EnumMap<>(DiffPhase.class);
+        for (DiffPhase phase : DiffPhase.values()) {
+            nanos.put(phase, phaseNanos[phase.ordinal()].sum());
+        }
+        Map<ModifiedPattern, Long> patternCounts = new EnumMap<>(ModifiedPattern.class);
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            patternCounts.put(pattern, counts[pattern.ordinal()].sum());
+        }
+        return new DiffMetricsSnapshot(Collections.unmodifiableMap(nanos), Collections.unmodifiableMap(patternCounts));
+    }
+
+    /**
+     * プラットフォームのMBeanサーバに登録する.
+     *
+     * @param name 登録名(例："recordPattern:type=DiffMetrics")
+     * @return 登録したオブジェクト名。登録解除に使う
+     */
+    public ObjectName register(String name) {
+        if (!enabled) {
+            throw new IllegalStateException("disabled metrics cannot be registered");
+        }
+        try {
+            ObjectName objectName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register " + name, e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        snapshot().getPhaseNanos().forEach((phase, value) -> nanos.put(phase.name(), value));
+        return nanos;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> patternCounts = new LinkedHashMap<>();
+        snapshot().getCounts().forEach((pattern, value) -> patternCounts.put(pattern.name(), value));
+        return patternCounts;
+    }
+
+    @Override
+    public long getRecords() {
+        return snapshot().getRecords();
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        return snapshot().getRecordsPerSecond();
+    }
+
+    @Override
+    public double getClassifyRecordsPerSecond() {
+        return snapshot().getRecordsPerSecond(DiffPhase.CLASSIFY);
+    }
+
+    @Override
+    public void reset() {
+        Arrays.stream(phaseNanos).forEach(LongAdder::reset);
+        Arrays.stream(counts).forEach(LongAdder::reset);
+    }
+
+    @Override
+    public String toString() {
+        DiffMetricsSnapshot snapshot = snapshot();
+        StringBuilder builder = new StringBuilder("DiffMetrics{");
+        snapshot.getPhaseNanos().forEach((phase, nanos) ->
+                builder.append(String.format("%s=%.3fms, ", phase, nanos / 1e6)));
+        builder.append(snapshot.getCounts());
+        return builder.append(String.format(", %.1f records/s}", snapshot.getRecordsPerSecond())).toString();
+    }
+
+    private static LongAdder[] adders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
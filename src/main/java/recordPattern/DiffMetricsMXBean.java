@@ -0,0 +1,30 @@
+package recordPattern;
+
+import java.util.Map;
+
+/**
+ * 差分処理の計測値をJMXで公開するインタフェース.
+ * <pre>
+ *     計測値は{@link ChangeClassifier}の分類のみを対象とする。
+ * </pre>
+ */
+public interface DiffMetricsMXBean {
+
+    /**
+     * @return フェーズ名と累積所要時間(ナノ秒)のマップ
+     */
+    Map<String, Long> getPhaseNanos();
+
+    /**
+     * @return マスター更新パターン名と件数のマップ
+     */
+    Map<String, Long> getCounts();
+
+    long getRecords();
+
+    double getRecordsPerSecond();
+
+    double getClassifyRecordsPerSecond();
+
+    void reset();
+}
@@ -0,0 +1,55 @@
+package recordPattern;
+
+import lombok.Value;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ある時点の差分処理の計測値.
+ */
+@Value
+public class DiffMetricsSnapshot {
+    // フェーズごとの累積所要時間(ナノ秒)
+    private Map<DiffPhase, Long> phaseNanos;
+    // マスター更新パターンごとの件数
+    private Map<ModifiedPattern, Long> counts;
+
+    public long getNanos(DiffPhase phase) {
+        return phaseNanos.get(phase);
+    }
+
+    public long getCount(ModifiedPattern pattern) {
+        return counts.get(pattern);
+    }
+
+    /**
+     * @return 分類したレコード(更新)の件数
+     */
+    public long getRecords() {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public long getTotalNanos() {
+        return phaseNanos.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return 全フェーズの所要時間に対する、1秒あたりの分類件数。計測していない場合0
+     */
+    public double getRecordsPerSecond() {
+        return perSecond(getRecords(), getTotalNanos());
+    }
+
+    /**
+     * @param phase フェーズ
+     * @return フェーズの所要時間に対する、1秒あたりの分類件数。計測していない場合0
+     */
+    public double getRecordsPerSecond(DiffPhase phase) {
+        return perSecond(getRecords(), getNanos(phase));
+    }
+
+    private static double perSecond(long records, long nanos) {
+        return nanos == 0 ? 0 : records * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+}
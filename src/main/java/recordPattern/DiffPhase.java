@@ -0,0 +1,13 @@
+package recordPattern;
+
+/**
+ * 差分処理のフェーズ。{@link ChangeClassifier}の処理を分けたもの
+ */
+public enum DiffPhase {
+    // PrimaryKeyの索引・ブルームフィルタの構築
+    INDEX,
+    // 更新パターンの分類
+    CLASSIFY,
+    // 分類結果の通知・出力
+    EMIT
+}
@@ -0,0 +1,245 @@
+package recordPattern;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * ヒープに収まらないレコード群を、一時ファイルを使った外部ソートで分類する.
+ * <pre>
+ *     各入力を最大{@code maxRecordsInMemory}件ずつPrimaryKey順にソートして一時ファイル(ラン)に書き出し、
+ *     ランをk-wayマージしたPrimaryKey順の列を{@link SortMergeClassifier}で分類する。
+ *     同じPrimaryKeyのレコードが複数ある場合は、入力で最初に現れたレコードのみを分類対象とするため、
+ *     分類結果は{@link ChangeClassifier}と同じになる。
+ *     一時ファイルは分類の終了時に削除する。
+ * </pre>
+ */
+public class ExternalChangeClassifier {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final SortMergeClassifier mergeClassifier = new SortMergeClassifier();
+    private final int maxRecordsInMemory;
+    private final Path tempDirectory;
+
+    /**
+     * @param maxRecordsInMemory 入力ごとにメモリ上でソートする最大件数
+     * @param tempDirectory      ランを書き出すディレクトリ
+     */
+    public ExternalChangeClassifier(int maxRecordsInMemory, Path tempDirectory) {
+        if (maxRecordsInMemory < 1) {
+            throw new IllegalArgumentException("maxRecordsInMemory must be positive: " + maxRecordsInMemory);
+        }
+        this.maxRecordsInMemory = maxRecordsInMemory;
+        this.tempDirectory = tempDirectory;
+    }
+
+    /**
+     * 分類して、更新パターンごとの結果を得る.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @return 分類結果
+     */
+    public ClassifyResult classify(Iterable<Record> masterRecords, Iterable<Record> requestRecords) {
+        ClassifyResult result = new ClassifyResult();
+        classify(masterRecords.iterator(), requestRecords.iterator(), result::add);
+        return result;
+    }
+
+    /**
+     * 分類して、PrimaryKey順に更新を通知する.
+     *
+     * @param masterRecords  マスターレコード群（順不同）
+     * @param requestRecords リクエストレコード群（順不同）
+     * @param sink           更新の通知先
+     */
+    public void classify(Iterator<Record> masterRecords, Iterator<Record> requestRecords, Consumer<Change> sink) {
+        try (SortedRuns master = sort(masterRecords);
+             SortedRuns request = sort(requestRecords)) {
+            mergeClassifier.classify(master.merge(), request.merge(), sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 入力をPrimaryKey順のランに分割する.
+     */
+    private SortedRuns sort(Iterator<Record> records) throws IOException {
+        SortedRuns runs = new SortedRuns();
+        try {
+            List<Record> buffer = new ArrayList<>();
+            while (records.hasNext()) {
+                buffer.add(records.next());
+                if (buffer.size() >= maxRecordsInMemory) {
+                    runs.spill(buffer);
+                    buffer.clear();
+                }
+            }
+            if (runs.files.isEmpty()) {
+                // 1ランに収まる場合はファイルに書き出さない
+                buffer.sort(Record.PRIMARY_KEY_ORDER);
+                runs.inMemory = buffer;
+            } else if (!buffer.isEmpty()) {
+                runs.spill(buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            runs.close();
+            throw e;
+        }
+        return runs;
+    }
+
+    /**
+     * PrimaryKey順にソート済みのラン群.
+     */
+    private class SortedRuns implements Closeable {
+        private final List<Path> files = new ArrayList<>();
+        private final List<DataInputStream> readers = new ArrayList<>();
+        private List<Record> inMemory;
+
+        void spill(List<Record> buffer) throws IOException {
+            // 安定ソートのため、同じPrimaryKeyは入力順に並ぶ
+            buffer.sort(Record.PRIMARY_KEY_ORDER);
+            Path file = Files.createTempFile(tempDirectory, "records-", ".run");
+            files.add(file);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE))) {
+                for (Record record : buffer) {
+                    RecordIO.write(out, record);
+                }
+                RecordIO.writeEnd(out);
+            }
+        }
+
+        /**
+         * ランをk-wayマージし、PrimaryKeyの重複を除いた列を得る.
+         */
+        Iterator<Record> merge() throws IOException {
+            PriorityQueue<RunCursor> queue = new PriorityQueue<>();
+            if (inMemory != null && !inMemory.isEmpty()) {
+                queue.add(new RunCursor(0, inMemory.iterator()::next, inMemory.size()));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                DataInputStream in = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(files.get(i)), BUFFER_SIZE));
+                readers.add(in);
+                RunCursor cursor = new RunCursor(i, () -> RecordIO.read(in), -1);
+                if (cursor.head != null) {
+                    queue.add(cursor);
+                }
+            }
+            return new DistinctMergeIterator(queue);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (DataInputStream reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordSource {
+        Record read() throws IOException;
+    }
+
+    /**
+     * ランの先頭を指すカーソル。PrimaryKey、ランの番号(入力順)の順に比較する.
+     */
+    private static class RunCursor implements Comparable<RunCursor> {
+        private final int run;
+        private final RecordSource source;
+        private int remaining;
+        private Record head;
+
+        /**
+         * @param remaining 件数。終端をsourceのnullで判定する場合は-1
+         */
+        RunCursor(int run, RecordSource source, int remaining) throws IOException {
+            this.run = run;
+            this.source = source;
+            this.remaining = remaining;
+            advance();
+        }
+
+        void advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return;
+            }
+            if (remaining > 0) {
+                remaining--;
+            }
+            head = source.read();
+        }
+
+        @Override
+        public int compareTo(RunCursor o) {
+            int compared = Record.PRIMARY_KEY_ORDER.compare(head, o.head);
+            return compared != 0 ? compared : Integer.compare(run, o.run);
+        }
+    }
+
+    private static class DistinctMergeIterator implements Iterator<Record> {
+        private final PriorityQueue<RunCursor> queue;
+        private Record last;
+
+        DistinctMergeIterator(PriorityQueue<RunCursor> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public boolean hasNext() {
+            skipDuplicates();
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = poll();
+            return last;
+        }
+
+        private void skipDuplicates() {
+            while (last != null && !queue.isEmpty() && queue.peek().head.getPrimaryKey().equals(last.getPrimaryKey())) {
+                poll();
+            }
+        }
+
+        private Record poll() {
+            RunCursor cursor = queue.poll();
+            Record record = cursor.head;
+            try {
+                cursor.advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (cursor.head != null) {
+                queue.add(cursor);
+            }
+            return record;
+        }
+    }
+}
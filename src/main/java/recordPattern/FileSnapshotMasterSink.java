@@ -0,0 +1,64 @@
+package recordPattern;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * マスターをファイルのスナップショットとして保持し、更新を反映する.
+ * <pre>
+ *     更新はメモリ上の{@link MasterSnapshot}に反映し、{@link #flush()}でスナップショット全体を書き出す。
+ *     書き出しは一時ファイルに書き込み、ディスクに同期してから置き換えるため、途中で失敗しても元のファイルは壊れない。
+ * </pre>
+ */
+public class FileSnapshotMasterSink extends InMemoryMasterSink {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+
+    /**
+     * @param file スナップショットファイル。存在する場合は読み込む
+     */
+    public FileSnapshotMasterSink(Path file) {
+        super(new MasterSnapshot(read(file)));
+        this.file = file;
+    }
+
+    @Override
+    public void flush() {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+                for (Record record : getSnapshot()) {
+                    RecordIO.write(out, record);
+                }
+                RecordIO.writeEnd(out);
+            }
+            FileSync.force(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileSync.forceDirectory(file.toAbsolutePath().getParent());
+        } catch (IOException e) {
+            throw new MasterSinkException("failed to write master snapshot: " + file, e);
+        }
+    }
+
+    private static List<Record> read(Path file) {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return records;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            for (Record record = RecordIO.read(in); record != null; record = RecordIO.read(in)) {
+                records.add(record);
+            }
+        } catch (IOException e) {
+            throw new MasterSinkException("failed to read master snapshot: " + file, e);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,47 @@
+package recordPattern;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ファイルとディレクトリの内容をディスクに同期する.
+ * <pre>
+ *     一時ファイルを置き換えてファイルを更新する場合は、置き換える前に一時ファイルを、
+ *     置き換えた後にディレクトリを同期する。どちらかを欠くと、クラッシュ後に空や書きかけのファイルが残り得る。
+ * </pre>
+ */
+final class FileSync {
+
+    private FileSync() {
+    }
+
+    /**
+     * ファイルの内容をディスクに同期する.
+     *
+     * @param file ファイル
+     */
+    static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * ディレクトリのエントリ(ファイルの作成・移動・削除)をディスクに同期する.
+     * <pre>
+     *     ディレクトリを開けないOS(Windows)では何もしない。
+     * </pre>
+     *
+     * @param directory ディレクトリ
+     */
+    static void forceDirectory(Path directory) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // ディレクトリの同期に対応していない
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package recordPattern;
+
+import java.util.List;
+
+/**
+ * メモリ上の{@link MasterSnapshot}に更新を反映する.
+ */
+public class InMemoryMasterSink implements MasterSink {
+    private final MasterSnapshot snapshot;
+
+    public InMemoryMasterSink(MasterSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public MasterSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void insert(List<Change> changes) {
+        changes.forEach(snapshot::apply);
+    }
+
+    @Override
+    public void update(List<Change> changes) {
+        changes.forEach(snapshot::apply);
+    }
+
+    @Override
+    public void delete(List<Change> changes) {
+        changes.forEach(snapshot::apply);
+    }
+}
@@ -0,0 +1,146 @@
+package recordPattern;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * JDBCでマスターテーブルに更新を反映する.
+ * <pre>
+ *     テーブルの列：primary_key(UUIDの文字列), age, name
+ *     各メソッドに渡された更新を1回のバッチ実行で書き込む。
+ *     UPDATE は変更された項目の組み合わせごとに、変更された列のみを更新するSQLで書き込む。
+ *     トランザクションは{@link #flush()}で確定させる（自動コミットが無効な場合）。
+ *     確定していない更新がある状態で{@link #close()}した場合はロールバックする。接続は閉じない。
+ * </pre>
+ */
+public class JdbcMasterSink implements MasterSink {
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+
+    private final Connection connection;
+    private final String table;
+    // 最後に確定してから、書き込みを行ったか
+    private boolean uncommitted;
+
+    /**
+     * @param connection 接続
+     * @param table      マスターテーブル名
+     */
+    public JdbcMasterSink(Connection connection, String table) {
+        if (!IDENTIFIER.matcher(table).matches()) {
+            throw new IllegalArgumentException("invalid table name: " + table);
+        }
+        this.connection = connection;
+        this.table = table;
+    }
+
+    @Override
+    public void insert(List<Change> changes) {
+        uncommitted = true;
+        String sql = "INSERT INTO " + table + " (primary_key, age, name) VALUES (?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Change change : changes) {
+                Record record = change.getRequestRecord();
+                statement.setString(1, record.getPrimaryKey().toString());
+                setAge(statement, 2, record.getAge());
+                statement.setString(3, record.getName());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new MasterSinkException("failed to insert into " + table, e);
+        }
+    }
+
+    @Override
+    public void update(List<Change> changes) {
+        uncommitted = true;
+        // 変更された項目の組み合わせごとに、同じSQLでまとめて実行する
+        Map<Integer, List<Change>> byChangedFields = new TreeMap<>();
+        changes.forEach(e -> byChangedFields.computeIfAbsent(e.getChangedFields(), key -> new ArrayList<>()).add(e));
+
+        for (Map.Entry<Integer, List<Change>> entry : byChangedFields.entrySet()) {
+            Set<RecordField> fields = RecordField.setOf(entry.getKey());
+            if (fields.isEmpty()) {
+                continue;
+            }
+            StringJoiner columns = new StringJoiner(", ");
+            fields.forEach(field -> columns.add(field.name().toLowerCase(Locale.ROOT) + " = ?"));
+            String sql = "UPDATE " + table + " SET " + columns + " WHERE primary_key = ?";
+
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (Change change : entry.getValue()) {
+                    Record record = change.getRequestRecord();
+                    int parameter = 1;
+                    if (fields.contains(RecordField.AGE)) {
+                        setAge(statement, parameter++, record.getAge());
+                    }
+                    if (fields.contains(RecordField.NAME)) {
+                        statement.setString(parameter++, record.getName());
+                    }
+                    statement.setString(parameter, record.getPrimaryKey().toString());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            } catch (SQLException e) {
+                throw new MasterSinkException("failed to update " + table, e);
+            }
+        }
+    }
+
+    @Override
+    public void delete(List<Change> changes) {
+        uncommitted = true;
+        String sql = "DELETE FROM " + table + " WHERE primary_key = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Change change : changes) {
+                statement.setString(1, change.getMasterRecord().getPrimaryKey().toString());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new MasterSinkException("failed to delete from " + table, e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            uncommitted = false;
+        } catch (SQLException e) {
+            throw new MasterSinkException("failed to commit " + table, e);
+        }
+    }
+
+    /**
+     * 確定していない更新があればロールバックする.
+     */
+    @Override
+    public void close() {
+        if (!uncommitted) {
+            return;
+        }
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+            }
+            uncommitted = false;
+        } catch (SQLException e) {
+            throw new MasterSinkException("failed to roll back " + table, e);
+        }
+    }
+
+    private static void setAge(PreparedStatement statement, int parameter, Integer age) throws SQLException {
+        if (age != null) {
+            statement.setInt(parameter, age);
+        } else {
+            statement.setNull(parameter, Types.INTEGER);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package recordPattern;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * レコードのテキストファイルをメモリマップして読み込む.
+ * <pre>
+ *     形式：1行1レコードの「UUID,age,name」（UTF-8、改行はLFまたはCRLF。空の項目はnull）
+ *     ファイルを{@link FileChannel#map}で最大1GBずつマップし、
+ *     マップしたバッファから直接UUID、ageを解析する。行ごとのStringは生成しない。
+ *     nameは同じバイト列に対して同じStringを再利用する。
+ *     読み込んだレコードは、TreeSetなどのコレクションにも、逐次分類の入力にも使える。
+ * </pre>
+ */
+public class MappedRecordReader implements Iterable<Record>, Closeable {
+    static final int WINDOW_SIZE = 1 << 30;
+    private static final int UUID_LENGTH = 36;
+    private static final int NAME_CACHE_SIZE = 1 << 12;
+
+    private final FileChannel channel;
+    private final NameDictionary dictionary;
+    private final int windowSize;
+
+    public MappedRecordReader(Path file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * @param file       レコードのテキストファイル
+     * @param dictionary 読み込んだレコードを束縛する名前の辞書。nullの場合は束縛しない
+     */
+    public MappedRecordReader(Path file, NameDictionary dictionary) throws IOException {
+        this(file, dictionary, WINDOW_SIZE);
+    }
+
+    MappedRecordReader(Path file, NameDictionary dictionary, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.dictionary = dictionary;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * ファイルの先頭からレコードを読み込むイテレータを得る.
+     */
+    @Override
+    public Iterator<Record> iterator() {
+        try {
+            return new RecordIterator(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Stream<Record> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * すべてのレコードをコレクションに読み込む.
+     *
+     * @param records 読み込み先（TreeSetなど）
+     * @return 読み込み先
+     */
+    public <C extends Collection<Record>> C readInto(C records) {
+        iterator().forEachRemaining(records::add);
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private class RecordIterator implements Iterator<Record> {
+        private final long fileSize;
+        private final String[] nameCache = new String[NAME_CACHE_SIZE];
+        private final byte[][] nameCacheBytes = new byte[NAME_CACHE_SIZE][];
+        private MappedByteBuffer buffer;
+        // マップした範囲の、ファイル先頭からの位置
+        private long windowStart;
+        private Record next;
+
+        RecordIterator(long fileSize) {
+            this.fileSize = fileSize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record record = next;
+            next = null;
+            return record;
+        }
+
+        private Record readNext() {
+            while (true) {
+                if (buffer == null || !buffer.hasRemaining()) {
+                    long position = buffer == null ? 0 : windowStart + buffer.limit();
+                    if (position >= fileSize) {
+                        return null;
+                    }
+                    map(position);
+                }
+                int lineStart = buffer.position();
+                int lineEnd = findLineEnd(lineStart);
+                if (lineEnd < 0) {
+                    // 行がマップした範囲をまたぐ場合は、行の先頭からマップし直す
+                    if (windowStart + buffer.limit() >= fileSize) {
+                        lineEnd = buffer.limit();
+                    } else if (lineStart == 0) {
+                        throw new IllegalStateException("line is longer than the mapping window at " + windowStart);
+                    } else {
+                        map(windowStart + lineStart);
+                        continue;
+                    }
+                }
+                buffer.position(Math.min(lineEnd + 1, buffer.limit()));
+
+                int contentEnd = lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (contentEnd > lineStart) {
+                    return parse(lineStart, contentEnd);
+                }
+            }
+        }
+
+        private void map(long position) {
+            try {
+                windowStart = position;
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, fileSize - position));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int findLineEnd(int from) {
+            for (int i = from; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Record parse(int start, int end) {
+            int ageStart = start + UUID_LENGTH + 1;
+            if (ageStart > end || buffer.get(ageStart - 1) != ',') {
+                throw malformed(start, end);
+            }
+            int nameStart = ageStart;
+            while (nameStart < end && buffer.get(nameStart) != ',') {
+                nameStart++;
+            }
+            if (nameStart == end) {
+                throw malformed(start, end);
+            }
+            nameStart++;
+
+            Record record = new Record();
+            record.setPrimaryKey(parseUuid(start, end));
+            record.setAge(parseAge(ageStart, nameStart - 1, start, end));
+            record.setName(parseName(nameStart, end));
+            if (dictionary != null) {
+                record.bindName(dictionary);
+            }
+            return record;
+        }
+
+        private UUID parseUuid(int start, int lineEnd) {
+            long msb = 0;
+            long lsb = 0;
+            int digits = 0;
+            for (int i = start; i < start + UUID_LENGTH; i++) {
+                byte b = buffer.get(i);
+                int offset = i - start;
+                if (offset == 8 || offset == 13 || offset == 18 || offset == 23) {
+                    if (b != '-') {
+                        throw malformed(start, lineEnd);
+                    }
+                    continue;
+                }
+                int value = Character.digit(b, 16);
+                if (value < 0) {
+                    throw malformed(start, lineEnd);
+                }
+                if (digits++ < 16) {
+                    msb = (msb << 4) | value;
+                } else {
+                    lsb = (lsb << 4) | value;
+                }
+            }
+            return new UUID(msb, lsb);
+        }
+
+        private Integer parseAge(int start, int end, int lineStart, int lineEnd) {
+            if (start == end) {
+                return null;
+            }
+            boolean negative = buffer.get(start) == '-';
+            int from = negative ? start + 1 : start;
+            if (from == end) {
+                throw malformed(lineStart, lineEnd);
+            }
+            // Integer#parseIntと同様に負の値として積み上げ、桁あふれを検出する
+            int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+            int value = 0;
+            for (int i = from; i < end; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || value < limit / 10) {
+                    throw malformed(lineStart, lineEnd);
+                }
+                value *= 10;
+                if (value < limit + digit) {
+                    throw malformed(lineStart, lineEnd);
+                }
+                value -= digit;
+            }
+            return negative ? value : -value;
+        }
+
+        /**
+         * nameを得る。同じバイト列のnameはキャッシュしたStringを返す.
+         */
+        private String parseName(int start, int end) {
+            int length = end - start;
+            if (length == 0) {
+                return null;
+            }
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int slot = (hash ^ (hash >>> 16)) & (NAME_CACHE_SIZE - 1);
+
+            byte[] cached = nameCacheBytes[slot];
+            if (cached != null && cached.length == length) {
+                boolean same = true;
+                for (int i = 0; i < length && same; i++) {
+                    same = cached[i] == buffer.get(start + i);
+                }
+                if (same) {
+                    return nameCache[slot];
+                }
+            }
+
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(start + i);
+            }
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            nameCacheBytes[slot] = bytes;
+            nameCache[slot] = name;
+            return name;
+        }
+
+        private IllegalArgumentException malformed(int start, int end) {
+            byte[] line = new byte[end - start];
+            for (int i = 0; i < line.length; i++) {
+                line[i] = buffer.get(start + i);
+            }
+            return new IllegalArgumentException(String.format("malformed record at offset %d: %s",
+                    windowStart + start, new String(line, StandardCharsets.UTF_8)));
+        }
+    }
+}
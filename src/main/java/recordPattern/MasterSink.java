@@ -0,0 +1,50 @@
+package recordPattern;
+
+import java.util.List;
+
+/**
+ * 分類済みの更新を反映するマスターの書き込み先.
+ * <pre>
+ *     更新は{@link ChangeApplier}がバッチ単位でまとめて渡す。
+ *     書き込みに失敗した場合は{@link MasterSinkException}をスローする。
+ * </pre>
+ */
+public interface MasterSink extends AutoCloseable {
+
+    /**
+     * NEW の更新を反映する.
+     *
+     * @param changes NEW の更新
+     */
+    void insert(List<Change> changes);
+
+    /**
+     * UPDATE の更新を反映する。{@link Change#getChangedFields()}の項目のみを書き込めばよい.
+     *
+     * @param changes UPDATE の更新
+     */
+    void update(List<Change> changes);
+
+    /**
+     * DELETE の更新を反映する.
+     *
+     * @param changes DELETE の更新
+     */
+    void delete(List<Change> changes);
+
+    /**
+     * 反映した更新を確定させる.
+     */
+    default void flush() {
+    }
+
+    /**
+     * 資源を解放する.
+     * <pre>
+     *     更新の確定は行わない。{@link #flush()}で確定していない更新は、書き込み先の方式に従って破棄される。
+     * </pre>
+     */
+    @Override
+    default void close() {
+    }
+}
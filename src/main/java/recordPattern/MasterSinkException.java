@@ -0,0 +1,12 @@
+package recordPattern;
+
+/**
+ * マスターへの書き込みに失敗したことを表す例外.
+ */
+public class MasterSinkException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public MasterSinkException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
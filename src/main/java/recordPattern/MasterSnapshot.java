@@ -0,0 +1,173 @@
+package recordPattern;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * 実行をまたいでメモリ上に常駐させるマスターレコード群.
+ * <pre>
+ *     PrimaryKeyの索引を一度だけ構築し、以降はリクエストレコード群を受け取るたびに分類、必要に応じて反映する。
+ *     分類の計算量はリクエストレコードの件数に比例し、マスターの件数には依存しない。
+ *     ただし{@link #classifyFull}で削除が発生した場合のみ、削除対象を探すためにマスターを走査する。
+ *     反映({@code apply=true}の分類、{@link #apply})はスレッドセーフではない。
+ *     反映を伴わない分類({@code apply=false}の{@link #classify}・{@link #classifyFull})はマスターを読むだけのため、
+ *     反映と並行しない限り、複数のスレッドから同時に呼び出してよい。
+ * </pre>
+ */
+public class MasterSnapshot implements Iterable<Record> {
+    private final RecordIndex index;
+
+    public MasterSnapshot() {
+        this.index = new RecordIndex();
+    }
+
+    public MasterSnapshot(Collection<Record> masterRecords) {
+        this.index = RecordIndex.of(masterRecords);
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public Record get(UUID primaryKey) {
+        return index.get(primaryKey);
+    }
+
+    /**
+     * マスターレコードを走査する。順序は不定.
+     */
+    @Override
+    public Iterator<Record> iterator() {
+        return new Iterator<Record>() {
+            private int slot = nextSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return slot < index.capacity();
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Record record = index.recordAt(slot);
+                slot = nextSlot(slot + 1);
+                return record;
+            }
+
+            private int nextSlot(int from) {
+                while (from < index.capacity() && index.recordAt(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+        };
+    }
+
+    /**
+     * リクエストレコード群を差分として分類する.
+     * <pre>
+     *     リクエストに含まれるPrimaryKeyのみを NEW/UPDATE/NO_MODIFIED に分類し、DELETE は判定しない。
+     * </pre>
+     *
+     * @param requestRecords リクエストレコード群
+     * @param apply          trueの場合、分類した更新をマスターに反映する
+     * @return 分類結果
+     */
+    public ClassifyResult classify(Iterable<Record> requestRecords, boolean apply) {
+        ClassifyResult result = new ClassifyResult();
+        classifyRequests(requestRecords, result::add);
+        if (apply) {
+            apply(result);
+        }
+        return result;
+    }
+
+    /**
+     * リクエストレコード群をマスターのあるべき全件として分類する.
+     * <pre>
+     *     リクエストに含まれないマスターレコードを DELETE とする。
+     *     マスターのすべてのPrimaryKeyがリクエストに含まれていた場合は、マスターを走査しない。
+     * </pre>
+     *
+     * @param requestRecords リクエストレコード群
+     * @param apply          trueの場合、分類した更新をマスターに反映する
+     * @return 分類結果
+     */
+    public ClassifyResult classifyFull(Iterable<Record> requestRecords, boolean apply) {
+        ClassifyResult result = new ClassifyResult();
+        RecordIndex matched = classifyRequests(requestRecords, result::add);
+
+        if (matched.size() < index.size()) {
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                Record masterRecord = index.recordAt(slot);
+                if (masterRecord != null && !matched.contains(masterRecord.getPrimaryKey())) {
+                    result.add(new Change(ModifiedPattern.DELETE, masterRecord, null));
+                }
+            }
+        }
+        if (apply) {
+            apply(result);
+        }
+        return result;
+    }
+
+    /**
+     * 分類結果をマスターに反映する.
+     *
+     * @param result 分類結果
+     */
+    public void apply(ClassifyResult result) {
+        for (ModifiedPattern pattern : ModifiedPattern.values()) {
+            result.getChanges(pattern).forEach(this::apply);
+        }
+    }
+
+    /**
+     * 更新をマスターに反映する.
+     *
+     * @param change 更新
+     */
+    public void apply(Change change) {
+        switch (change.getModifiedPattern()) {
+            case NEW:
+            case UPDATE:
+                index.put(change.getRequestRecord());
+                break;
+            case DELETE:
+                index.remove(change.getMasterRecord().getPrimaryKey());
+                break;
+            case NO_MODIFIED:
+                break;
+            default:
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * リクエストに含まれるPrimaryKeyを分類する.
+     *
+     * @return マスターと照合されたレコードの索引
+     */
+    private RecordIndex classifyRequests(Iterable<Record> requestRecords, Consumer<Change> sink) {
+        RecordIndex seen = new RecordIndex();
+        RecordIndex matched = new RecordIndex();
+        for (Record requestRecord : requestRecords) {
+            if (!seen.putIfAbsent(requestRecord)) {
+                continue;
+            }
+            Record masterRecord = index.get(requestRecord.getPrimaryKey());
+            if (masterRecord == null) {
+                sink.accept(new Change(ModifiedPattern.NEW, null, requestRecord));
+            } else {
+                matched.putIfAbsent(masterRecord);
+                sink.accept(ChangeClassifier.changeOf(masterRecord, requestRecord));
+            }
+        }
+        return matched;
+    }
+}
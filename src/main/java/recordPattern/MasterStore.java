@@ -0,0 +1,242 @@
+package recordPattern;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * ヒープ外に固定長スロットでマスターレコードを保持するストア.
+ * <pre>
+ *     TreeSetのノードとしてマスターを保持するとGCの対象がマスター件数に比例するため、
+ *     レコードをダイレクトバッファ上の固定長スロットに書き込み、ヒープには辞書とバッファのみを置く。
+ *     スロット：UUID上位(8byte) / UUID下位(8byte) / age(4byte) / nameのコード(4byte)
+ *     ageのnullはスロットとは別のビット列(1スロット1bit)で持つ。ageはintの全範囲を値として扱う。
+ *     スロットは{@link Record#PRIMARY_KEY_ORDER}の順(上位64bit・下位64bitの符号なし比較)に並べるため、
+ *     スロット順の走査、およびDELETEの通知はこの順になる。
+ *     PrimaryKeyによる検索は、同じくダイレクトバッファ上のオープンアドレス法の索引で行う。
+ *     構築後は変更できない。
+ * </pre>
+ */
+public class MasterStore implements Iterable<Record> {
+    private static final int SLOT_SIZE = 24;
+    private static final int MSB_OFFSET = 0;
+    private static final int LSB_OFFSET = 8;
+    private static final int AGE_OFFSET = 16;
+    private static final int NAME_OFFSET = 20;
+    private static final int MAX_SIZE = Integer.MAX_VALUE / SLOT_SIZE;
+
+    private final NameDictionary dictionary;
+    private final ByteBuffer slots;
+    // ageがnullのスロット
+    private final BitSet nullAges;
+    // スロット番号+1 を格納する索引（0は空き）
+    private final IntBuffer index;
+    private final int mask;
+    private final int size;
+
+    private MasterStore(NameDictionary dictionary, Record[] sortedRecords, int size) {
+        this.dictionary = dictionary;
+        this.size = size;
+        this.slots = ByteBuffer.allocateDirect(Math.max(size, 1) * SLOT_SIZE).order(ByteOrder.nativeOrder());
+        this.nullAges = new BitSet(size);
+
+        int capacity = Integer.highestOneBit(Math.max(size * 2, 16) - 1) << 1;
+        this.index = ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        this.mask = capacity - 1;
+
+        for (int slot = 0; slot < size; slot++) {
+            write(slot, sortedRecords[slot]);
+        }
+    }
+
+    /**
+     * レコード群からストアを構築する。同じPrimaryKeyのレコードが複数ある場合は、最初のレコードを保持する.
+     *
+     * @param records    マスターレコード群
+     * @param dictionary 名前の辞書。すべての名前を変換できること
+     * @return ストア
+     */
+    public static MasterStore of(Collection<Record> records, NameDictionary dictionary) {
+        if (records.size() > MAX_SIZE) {
+            throw new IllegalArgumentException("too many records for a single store: " + records.size());
+        }
+        // 安定ソートのため、同じPrimaryKeyは入力順に並ぶ
+        Record[] sorted = records.toArray(new Record[0]);
+        Arrays.sort(sorted, Record.PRIMARY_KEY_ORDER);
+        int size = 0;
+        for (Record record : sorted) {
+            if (size == 0 || !sorted[size - 1].getPrimaryKey().equals(record.getPrimaryKey())) {
+                sorted[size++] = record;
+            }
+        }
+        return new MasterStore(dictionary, sorted, size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NameDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * PrimaryKeyに一致するレコードを得る.
+     *
+     * @param primaryKey PrimaryKey
+     * @return レコード。存在しない場合null
+     */
+    public Record get(UUID primaryKey) {
+        int slot = find(primaryKey.getMostSignificantBits(), primaryKey.getLeastSignificantBits());
+        return slot < 0 ? null : read(slot);
+    }
+
+    public boolean contains(UUID primaryKey) {
+        return find(primaryKey.getMostSignificantBits(), primaryKey.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * PrimaryKey順にレコードを走査する。レコードは要素を取り出すたびにスロットから復元する.
+     * <pre>
+     *     順序は{@link Record#PRIMARY_KEY_ORDER}（符号なし比較）である。
+     *     {@link SortMergeClassifier}のマスター側の入力としてそのまま使える。
+     * </pre>
+     */
+    @Override
+    public Iterator<Record> iterator() {
+        return new Iterator<Record>() {
+            private int slot;
+
+            @Override
+            public boolean hasNext() {
+                return slot < size;
+            }
+
+            @Override
+            public Record next() {
+                if (slot >= size) {
+                    throw new NoSuchElementException();
+                }
+                return read(slot++);
+            }
+        };
+    }
+
+    /**
+     * リクエストレコード群を分類して、更新パターンごとの結果を得る.
+     *
+     * @param requestRecords リクエストレコード群
+     * @return 分類結果
+     */
+    public ClassifyResult classify(Iterable<Record> requestRecords) {
+        ClassifyResult result = new ClassifyResult();
+        classify(requestRecords, result::add);
+        return result;
+    }
+
+    /**
+     * リクエストレコード群を分類して、分類した順に更新を通知する.
+     * <pre>
+     *     項目の比較はスロット上の値で行い、マスターレコードは通知する更新にのみ復元する。
+     *     リクエストに対応しないマスターのDELETEは、最後に{@link Record#PRIMARY_KEY_ORDER}の順で通知する。
+     * </pre>
+     *
+     * @param requestRecords リクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(Iterable<Record> requestRecords, Consumer<Change> sink) {
+        BitSet matched = new BitSet(size);
+        RecordIndex newRecords = new RecordIndex();
+
+        for (Record requestRecord : requestRecords) {
+            UUID key = requestRecord.getPrimaryKey();
+            int slot = find(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            if (slot < 0) {
+                if (newRecords.putIfAbsent(requestRecord)) {
+                    sink.accept(new Change(ModifiedPattern.NEW, null, requestRecord));
+                }
+                continue;
+            }
+            if (matched.get(slot)) {
+                continue;
+            }
+            matched.set(slot);
+
+            int changedFields = diff(slot, requestRecord);
+            ModifiedPattern pattern = changedFields == 0 ? ModifiedPattern.NO_MODIFIED : ModifiedPattern.UPDATE;
+            sink.accept(new Change(pattern, read(slot), requestRecord, changedFields));
+        }
+
+        for (int slot = matched.nextClearBit(0); slot < size; slot = matched.nextClearBit(slot + 1)) {
+            sink.accept(new Change(ModifiedPattern.DELETE, read(slot), null));
+        }
+    }
+
+    private int diff(int slot, Record requestRecord) {
+        int offset = slot * SLOT_SIZE;
+        int changedFields = 0;
+        Integer age = requestRecord.getAge();
+        boolean ageNull = nullAges.get(slot);
+        if (ageNull != (age == null) || (!ageNull && slots.getInt(offset + AGE_OFFSET) != age)) {
+            changedFields |= RecordField.AGE.mask();
+        }
+        // 未登録の名前は格納済みのどのコードとも一致しない。分類で辞書に名前を登録しないよう、引くだけとする
+        if (slots.getInt(offset + NAME_OFFSET) != dictionary.lookup(requestRecord.getName())) {
+            changedFields |= RecordField.NAME.mask();
+        }
+        return changedFields;
+    }
+
+    /**
+     * @return スロット番号。存在しない場合-1
+     */
+    private int find(long msb, long lsb) {
+        int position = RecordIndex.hash(msb, lsb) & mask;
+        int entry;
+        while ((entry = index.get(position)) != 0) {
+            int offset = (entry - 1) * SLOT_SIZE;
+            if (slots.getLong(offset + MSB_OFFSET) == msb && slots.getLong(offset + LSB_OFFSET) == lsb) {
+                return entry - 1;
+            }
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void write(int slot, Record record) {
+        int nameCode = dictionary.encode(record.getName());
+        if (nameCode == NameDictionary.UNKNOWN_CODE) {
+            throw new IllegalArgumentException("name is not in the dictionary: " + record.getName());
+        }
+        long msb = record.getPrimaryKey().getMostSignificantBits();
+        long lsb = record.getPrimaryKey().getLeastSignificantBits();
+
+        int offset = slot * SLOT_SIZE;
+        slots.putLong(offset + MSB_OFFSET, msb);
+        slots.putLong(offset + LSB_OFFSET, lsb);
+        if (record.getAge() != null) {
+            slots.putInt(offset + AGE_OFFSET, record.getAge());
+        } else {
+            nullAges.set(slot);
+        }
+        slots.putInt(offset + NAME_OFFSET, nameCode);
+
+        int position = RecordIndex.hash(msb, lsb) & mask;
+        while (index.get(position) != 0) {
+            position = (position + 1) & mask;
+        }
+        index.put(position, slot + 1);
+    }
+
+    private Record read(int slot) {
+        int offset = slot * SLOT_SIZE;
+        Record record = new Record();
+        record.setPrimaryKey(new UUID(slots.getLong(offset + MSB_OFFSET), slots.getLong(offset + LSB_OFFSET)));
+        record.setAge(nullAges.get(slot) ? null : slots.getInt(offset + AGE_OFFSET));
+        record.setName(dictionary.decode(slots.getInt(offset + NAME_OFFSET)));
+        record.bindName(dictionary);
+        return record;
+    }
+}
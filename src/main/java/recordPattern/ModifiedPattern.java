@@ -0,0 +1,11 @@
+package recordPattern;
+
+/**
+ * マスター更新パターン
+ */
+public enum ModifiedPattern {
+    NEW,
+    UPDATE,
+    DELETE,
+    NO_MODIFIED
+}
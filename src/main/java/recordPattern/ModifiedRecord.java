@@ -4,10 +4,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
-import org.apache.commons.beanutils.BeanUtils;
 
-import java.lang.reflect.InvocationTargetException;
-import java.util.Comparator;
 import java.util.UUID;
 
 /**
@@ -22,19 +19,15 @@ import java.util.UUID;
 @NoArgsConstructor
 @ToString
 public class ModifiedRecord {
+    private static final PropertyCopier<Record, ModifiedRecord> FROM_RECORD =
+            PropertyCopier.of(Record.class, ModifiedRecord.class);
 
     private UUID primaryKey;
     private Integer age;
     private String name;
 
     public ModifiedRecord(Record record) {
-        try {
-            BeanUtils.copyProperties(this, record);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
-            e.printStackTrace();
-        }
+        FROM_RECORD.copy(record, this);
     }
 
     public static void main(String[] args) {
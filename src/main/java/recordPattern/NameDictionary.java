@@ -0,0 +1,112 @@
+package recordPattern;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 名前を整数コードに置き換える辞書.
+ * <pre>
+ *     同じ辞書に束縛したレコード同士は、名前の等価判定をコードの比較で行う（{@link Record#bindName}）。
+ *     {@link #sorted(Collection)}で作る辞書は、コードの大小が名前の大小と一致する（順序保存）。
+ *     順序保存の辞書に束縛したレコード同士は、ソートの比較もコードで行う。
+ *     順序保存の辞書は作成後に名前を追加できないため、未登録の名前は{@link #UNKNOWN_CODE}となり、
+ *     その場合は文字列で比較する。
+ * </pre>
+ */
+public class NameDictionary {
+    public static final int NULL_CODE = -1;
+    public static final int UNKNOWN_CODE = -2;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final boolean orderPreserving;
+
+    /**
+     * 登録順にコードを振る辞書を作る.
+     */
+    public NameDictionary() {
+        this.orderPreserving = false;
+    }
+
+    private NameDictionary(SortedSet<String> domain) {
+        this.orderPreserving = true;
+        for (String name : domain) {
+            codes.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    /**
+     * 名前の昇順にコードを振る、順序保存の辞書を作る.
+     *
+     * @param domain 名前の定義域
+     * @return 順序保存の辞書
+     */
+    public static NameDictionary sorted(Collection<String> domain) {
+        return new NameDictionary(new TreeSet<>(domain));
+    }
+
+    /**
+     * 名前をコードに変換する。順序保存でない辞書では、未登録の名前を登録する.
+     *
+     * @param name 名前
+     * @return コード。nullの場合{@link #NULL_CODE}、順序保存の辞書に未登録の場合{@link #UNKNOWN_CODE}
+     */
+    public int encode(String name) {
+        if (name == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        if (orderPreserving) {
+            return UNKNOWN_CODE;
+        }
+        synchronized (names) {
+            return codes.computeIfAbsent(name, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+        }
+    }
+
+    /**
+     * 名前をコードに変換する。未登録の名前は登録しない.
+     *
+     * @param name 名前
+     * @return コード。nullの場合{@link #NULL_CODE}、未登録の場合{@link #UNKNOWN_CODE}
+     */
+    public int lookup(String name) {
+        if (name == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(name);
+        return code != null ? code : UNKNOWN_CODE;
+    }
+
+    /**
+     * コードを名前に変換する.
+     *
+     * @param code コード
+     * @return 名前
+     */
+    public String decode(int code) {
+        if (code == NULL_CODE) {
+            return null;
+        }
+        synchronized (names) {
+            return names.get(code);
+        }
+    }
+
+    public boolean isOrderPreserving() {
+        return orderPreserving;
+    }
+
+    public int size() {
+        synchronized (names) {
+            return names.size();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package recordPattern;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * PrimaryKeyのハッシュで分割したバケットごとに、並列に分類する.
+ * <pre>
+ *     同じPrimaryKeyのマスターレコードとリクエストレコードは必ず同じバケットに入るため、
+ *     バケットごとに{@link ChangeClassifier}で独立して分類し、最後に結果をマージする。
+ *     バケットへの振り分けも、入力をチャンクに分けて並列に行う（並列の計数ソート）。
+ *     振り分けは入力順を保つため、同じPrimaryKeyのレコードが複数ある場合の扱いは{@link ChangeClassifier}と同じになる。
+ * </pre>
+ */
+public class ParallelChangeClassifier {
+    // これより小さいチャンクには分割しない
+    private static final int MIN_CHUNK_SIZE = 1 << 13;
+
+    private final ForkJoinPool pool;
+    private final int partitions;
+    private final ChangeClassifier classifier = new ChangeClassifier();
+
+    public ParallelChangeClassifier() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ParallelChangeClassifier(ForkJoinPool pool) {
+        // バケットの大きさの偏りを均すため、並列度より多めに分割する
+        this(pool, pool.getParallelism() * 4);
+    }
+
+    /**
+     * @param pool       分類を実行するプール
+     * @param partitions バケット数
+     */
+    public ParallelChangeClassifier(ForkJoinPool pool, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be positive: " + partitions);
+        }
+        this.pool = pool;
+        this.partitions = partitions;
+    }
+
+    /**
+     * 分類して、更新パターンごとの結果を得る.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @return 分類結果
+     */
+    public ClassifyResult classify(Collection<Record> masterRecords, Collection<Record> requestRecords) {
+        int[] masterBucketStart = new int[partitions + 1];
+        int[] requestBucketStart = new int[partitions + 1];
+        List<Record> masterBuckets = Arrays.asList(partition(masterRecords, masterBucketStart));
+        List<Record> requestBuckets = Arrays.asList(partition(requestRecords, requestBucketStart));
+
+        ClassifyResult[] results = new ClassifyResult[partitions];
+        parallelFor(partitions, bucket -> {
+            ClassifyResult result = new ClassifyResult();
+            classifier.classify(
+                    masterBuckets.subList(masterBucketStart[bucket], masterBucketStart[bucket + 1]),
+                    requestBuckets.subList(requestBucketStart[bucket], requestBucketStart[bucket + 1]),
+                    result::add);
+            results[bucket] = result;
+        });
+
+        ClassifyResult merged = new ClassifyResult();
+        for (ClassifyResult result : results) {
+            merged.addAll(result);
+        }
+        return merged;
+    }
+
+    /**
+     * レコードをバケット順に並べ替える.
+     *
+     * @param records     レコード群
+     * @param bucketStart バケットごとの開始位置（バケット数+1の大きさ）。戻り値と対応する値を設定する
+     * @return バケット順に並べ替えたレコード
+     */
+    private Record[] partition(Collection<Record> records, int[] bucketStart) {
+        Record[] input = records.toArray(new Record[0]);
+        int chunks = Math.max(1, Math.min(pool.getParallelism() * 4, input.length / MIN_CHUNK_SIZE));
+        int[] bucketOf = new int[input.length];
+        int[][] offsets = new int[chunks][partitions];
+
+        // チャンクごとに、各要素のバケットとバケットごとの件数を得る
+        parallelFor(chunks, chunk -> {
+            int[] counts = offsets[chunk];
+            for (int i = chunkStart(chunk, chunks, input.length); i < chunkStart(chunk + 1, chunks, input.length); i++) {
+                int bucket = bucketOf(input[i]);
+                bucketOf[i] = bucket;
+                counts[bucket]++;
+            }
+        });
+
+        // 件数を、バケット順・チャンク順の書き込み開始位置に置き換える
+        int position = 0;
+        for (int bucket = 0; bucket < partitions; bucket++) {
+            bucketStart[bucket] = position;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int count = offsets[chunk][bucket];
+                offsets[chunk][bucket] = position;
+                position += count;
+            }
+        }
+        bucketStart[partitions] = position;
+
+        Record[] output = new Record[input.length];
+        parallelFor(chunks, chunk -> {
+            int[] next = offsets[chunk];
+            for (int i = chunkStart(chunk, chunks, input.length); i < chunkStart(chunk + 1, chunks, input.length); i++) {
+                output[next[bucketOf[i]]++] = input[i];
+            }
+        });
+        return output;
+    }
+
+    private int bucketOf(Record record) {
+        // RecordIndexのハッシュと相関するとバケット内の索引で衝突が増えるため、別の混ぜ方をする
+        long msb = record.getPrimaryKey().getMostSignificantBits();
+        long lsb = record.getPrimaryKey().getLeastSignificantBits();
+        long h = (lsb ^ Long.rotateRight(msb, 17)) * 0xC2B2AE3D27D4EB4FL;
+        return (int) ((h >>> 32) % partitions);
+    }
+
+    private static int chunkStart(int chunk, int chunks, int length) {
+        return (int) ((long) length * chunk / chunks);
+    }
+
+    /**
+     * 0～count-1 の各値についてbodyをプール上で並列に実行し、すべての完了を待つ.
+     */
+    private void parallelFor(int count, IntConsumer body) {
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<ForkJoinTask<?>> tasks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int index = i;
+                    tasks.add(ForkJoinTask.adapt(() -> body.accept(index)));
+                }
+                invokeAll(tasks);
+            }
+        });
+    }
+}
@@ -0,0 +1,90 @@
+package recordPattern;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * PrimaryKeyの集合に対するブルームフィルタ.
+ * <pre>
+ *     {@link #mightContain(UUID)}がfalseのPrimaryKeyは、集合に確実に存在しない。
+ *     trueの場合は、指定した偽陽性率で存在しないことがある。
+ *     ビット位置は、UUIDの2つのlongから求めた2つのハッシュによるダブルハッシングで得る。
+ * </pre>
+ */
+public class PrimaryKeyBloomFilter {
+    private final long[] bits;
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 登録する件数の見込み
+     * @param falsePositiveRate  偽陽性率（0より大きく1未満）
+     */
+    public PrimaryKeyBloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1): " + falsePositiveRate);
+        }
+        int n = Math.max(expectedInsertions, 1);
+        // 最適なビット数 m = -n ln(p) / (ln 2)^2、ハッシュ数 k = m / n ln 2
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (m + 63) >>> 6)];
+        this.bitSize = (long) bits.length << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+    }
+
+    /**
+     * レコード群のPrimaryKeyからブルームフィルタを構築する.
+     *
+     * @param records           レコード群
+     * @param falsePositiveRate 偽陽性率
+     * @return ブルームフィルタ
+     */
+    public static PrimaryKeyBloomFilter of(Collection<Record> records, double falsePositiveRate) {
+        PrimaryKeyBloomFilter filter = new PrimaryKeyBloomFilter(records.size(), falsePositiveRate);
+        records.forEach(e -> filter.put(e.getPrimaryKey()));
+        return filter;
+    }
+
+    public void put(UUID primaryKey) {
+        long h1 = hash1(primaryKey);
+        long h2 = hash2(primaryKey);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @param primaryKey PrimaryKey
+     * @return 存在する可能性がある場合true。falseの場合は確実に存在しない
+     */
+    public boolean mightContain(UUID primaryKey) {
+        long h1 = hash1(primaryKey);
+        long h2 = hash2(primaryKey);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitSize);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash1(UUID key) {
+        return mix(key.getMostSignificantBits() ^ Long.rotateLeft(key.getLeastSignificantBits(), 29));
+    }
+
+    private static long hash2(UUID key) {
+        // 奇数にして、ビット数と互いに素になりやすくする
+        return mix(key.getLeastSignificantBits() ^ 0x9E3779B97F4A7C15L ^ key.getMostSignificantBits() * 31) | 1;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
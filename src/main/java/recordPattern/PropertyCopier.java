@@ -0,0 +1,164 @@
+package recordPattern;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 同名プロパティの値をコピーする.
+ * <pre>
+ *     コピー元のgetterとコピー先のsetterを、(コピー元クラス, コピー先クラス)の組ごとに一度だけ
+ *     LambdaMetafactoryでFunction・BiConsumerに束縛する。
+ *     コピーのたびにリフレクションでプロパティを探すBeanUtils#copyPropertiesと異なり、
+ *     コピーは束縛済みのラムダ(getter・setterの直接呼び出し)のみで行い、JITによるインライン化の対象となる。
+ *     setterの引数型にgetterの戻り値型を代入できるプロパティのみをコピーし、型変換は行わない。
+ * </pre>
+ *
+ * @param <S> コピー元の型
+ * @param <T> コピー先の型
+ */
+public final class PropertyCopier<S, T> {
+    private static final ClassValue<Map<Class<?>, PropertyCopier<?, ?>>> COPIERS =
+            new ClassValue<Map<Class<?>, PropertyCopier<?, ?>>>() {
+                @Override
+                protected Map<Class<?>, PropertyCopier<?, ?>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final Property[] properties;
+
+    private PropertyCopier(Class<S> sourceType, Class<T> targetType) {
+        Map<String, Method> readMethods = readMethods(sourceType);
+        List<Property> properties = new ArrayList<>();
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Method writeMethod : targetType.getMethods()) {
+            String name = propertyName(writeMethod, "set", 1);
+            Method readMethod = name != null ? readMethods.get(name) : null;
+            if (readMethod == null || !writeMethod.getParameterTypes()[0].isAssignableFrom(readMethod.getReturnType())) {
+                continue;
+            }
+            try {
+                properties.add(new Property(name, getter(lookup, readMethod), setter(lookup, writeMethod)));
+            } catch (Throwable e) {
+                throw new PropertyCopyException(String.format(
+                        "property '%s' is not accessible: %s -> %s", name, sourceType.getName(), targetType.getName()), e);
+            }
+        }
+
+        this.properties = properties.toArray(new Property[0]);
+    }
+
+    /**
+     * コピー元クラスとコピー先クラスの組に対するコピーを得る.
+     *
+     * @param sourceType コピー元クラス
+     * @param targetType コピー先クラス
+     * @return コピー
+     */
+    @SuppressWarnings("unchecked")
+    public static <S, T> PropertyCopier<S, T> of(Class<S> sourceType, Class<T> targetType) {
+        return (PropertyCopier<S, T>) COPIERS.get(sourceType)
+                .computeIfAbsent(targetType, type -> new PropertyCopier<>(sourceType, targetType));
+    }
+
+    /**
+     * 同名プロパティの値をコピーする.
+     *
+     * @param source コピー元
+     * @param target コピー先
+     * @return コピー先
+     * @throws PropertyCopyException getterまたはsetterが例外をスローした場合
+     */
+    public T copy(S source, T target) {
+        for (Property property : properties) {
+            try {
+                property.setter.accept(target, property.getter.apply(source));
+            } catch (Exception e) {
+                throw new PropertyCopyException("failed to copy property '" + property.name + "'", e);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * getterを{@code Function<コピー元, 戻り値(プリミティブはラッパー)>}に束縛する.
+     */
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(MethodHandles.Lookup lookup, Method method) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                lookup.unreflect(method),
+                MethodType.methodType(wrap(method.getReturnType()), method.getDeclaringClass()));
+        return (Function<Object, Object>) site.getTarget().invoke();
+    }
+
+    /**
+     * setterを{@code BiConsumer<コピー先, 引数(プリミティブはラッパー)>}に束縛する.
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setter(MethodHandles.Lookup lookup, Method method) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+                MethodType.methodType(BiConsumer.class),
+                MethodType.methodType(void.class, Object.class, Object.class),
+                lookup.unreflect(method),
+                MethodType.methodType(void.class, method.getDeclaringClass(), wrap(method.getParameterTypes()[0])));
+        return (BiConsumer<Object, Object>) site.getTarget().invoke();
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+
+    private static Map<String, Method> readMethods(Class<?> type) {
+        Map<String, Method> readMethods = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            String name = propertyName(method, "get", 0);
+            if (name == null && (method.getReturnType() == boolean.class)) {
+                name = propertyName(method, "is", 0);
+            }
+            if (name != null && method.getReturnType() != void.class && !"class".equals(name)) {
+                readMethods.put(name, method);
+            }
+        }
+        return readMethods;
+    }
+
+    /**
+     * アクセサのメソッド名からプロパティ名を得る.
+     *
+     * @return プロパティ名。アクセサでない場合null
+     */
+    private static String propertyName(Method method, String prefix, int parameterCount) {
+        String methodName = method.getName();
+        if (Modifier.isStatic(method.getModifiers())
+                || method.getParameterCount() != parameterCount
+                || methodName.length() <= prefix.length()
+                || !methodName.startsWith(prefix)) {
+            return null;
+        }
+        String name = methodName.substring(prefix.length());
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static final class Property {
+        private final String name;
+        private final Function<Object, Object> getter;
+        private final BiConsumer<Object, Object> setter;
+
+        Property(String name, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.name = name;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package recordPattern;
+
+/**
+ * プロパティのコピーに失敗したことを表す例外.
+ */
+public class PropertyCopyException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public PropertyCopyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,30 +1,103 @@
 package recordPattern;
 
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.ToString;
 
 import java.util.Comparator;
+import java.util.Objects;
 import java.util.UUID;
 
 
 @Data
 @EqualsAndHashCode
-@ToString
+@ToString(exclude = {"dictionary", "nameCode"})
 public class Record implements Comparable {
+    /**
+     * PrimaryKey 昇順（{@link #comparePrimaryKeys}の順）
+     */
+    public static final Comparator<Record> PRIMARY_KEY_ORDER =
+            (a, b) -> comparePrimaryKeys(a.getPrimaryKey(), b.getPrimaryKey());
+
     private UUID primaryKey;
     private String name;
     private Integer age;
 
+    // 名前の辞書と、辞書でのnameのコード
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient NameDictionary dictionary;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient int nameCode = NameDictionary.UNKNOWN_CODE;
+
+    public void setName(String name) {
+        this.name = name;
+        if (dictionary != null) {
+            this.nameCode = dictionary.encode(name);
+        }
+    }
+
+    /**
+     * 名前を辞書に束縛する。以降、同じ辞書に束縛したレコードとの名前の比較はコードで行う.
+     *
+     * @param dictionary 名前の辞書
+     */
+    public void bindName(NameDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.nameCode = dictionary.encode(name);
+    }
+
+    /**
+     * 名前が一致するかを判定する.
+     *
+     * @param other 比較対象のレコード
+     * @return 名前が一致する場合true
+     */
+    public boolean sameName(Record other) {
+        if (dictionary != null && dictionary == other.dictionary && nameCode != NameDictionary.UNKNOWN_CODE) {
+            return nameCode == other.nameCode;
+        }
+        return Objects.equals(name, other.name);
+    }
+
+    /**
+     * PrimaryKeyを比較する.
+     * <pre>
+     *     上位64bit、下位64bitの順に符号なしで比較する。
+     *     UUIDの文字列表現の辞書順、DBのuuid型・文字列型のORDER BY、sort(1)の順と一致する。
+     *     （UUID#compareToは符号付きで比較するため、7fff...と8000...の境界で順序が逆転する）
+     * </pre>
+     *
+     * @param a PrimaryKeyＡ
+     * @param b PrimaryKeyＢ
+     * @return Ａが小さい場合負、等しい場合0、大きい場合正
+     */
+    public static int comparePrimaryKeys(UUID a, UUID b) {
+        int compared = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return compared != 0 ? compared
+                : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
     // 出力を見やすくするため
     @Override
     public int compareTo(Object o) {
         if (o instanceof Record) {
             // age 昇順, name 昇順
-            Comparator<Record> comparator = Comparator.comparing(Record::getAge).thenComparing(Record::getName);
-            return comparator.compare(this, (Record) o);
+            Record other = (Record) o;
+            int compared = age.compareTo(other.age);
+            if (compared != 0) {
+                return compared;
+            }
+            if (dictionary != null && dictionary == other.dictionary && dictionary.isOrderPreserving()
+                    && nameCode >= 0 && other.nameCode >= 0) {
+                return Integer.compare(nameCode, other.nameCode);
+            }
+            return name.compareTo(other.name);
         }
         return 0;
     }
-
 }
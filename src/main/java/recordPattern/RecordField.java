@@ -0,0 +1,63 @@
+package recordPattern;
+
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 更新の判定対象となる、PKを除くレコードの項目.
+ * <pre>
+ *     変更された項目の組み合わせは、各項目の{@link #mask()}の論理和(ビットマスク)で表す。
+ * </pre>
+ */
+public enum RecordField {
+    AGE,
+    NAME;
+
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    public boolean isIn(int mask) {
+        return (mask & mask()) != 0;
+    }
+
+    /**
+     * 2つのレコードで値が異なる項目を得る.
+     * <pre>
+     *     ageはIntegerの比較、nameは同じ辞書に束縛したレコード同士であればコードの比較で行い、オブジェクトは生成しない。
+     *     項目全体の指紋(ハッシュ)を先に比較しても、指紋の一致は項目の比較で確かめる必要があり、
+     *     不一致の場合もビットマスクを得るために項目を比較するため、比較の回数は減らない。
+     * </pre>
+     *
+     * @param a レコードＡ
+     * @param b レコードＢ
+     * @return 値が異なる項目のビットマスク。すべて一致する場合0
+     */
+    public static int diff(Record a, Record b) {
+        int mask = 0;
+        if (!Objects.equals(a.getAge(), b.getAge())) {
+            mask |= AGE.mask();
+        }
+        if (!a.sameName(b)) {
+            mask |= NAME.mask();
+        }
+        return mask;
+    }
+
+    /**
+     * ビットマスクを項目の集合に変換する.
+     *
+     * @param mask 項目のビットマスク
+     * @return 項目の集合
+     */
+    public static Set<RecordField> setOf(int mask) {
+        Set<RecordField> fields = EnumSet.noneOf(RecordField.class);
+        for (RecordField field : values()) {
+            if (field.isIn(mask)) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+}
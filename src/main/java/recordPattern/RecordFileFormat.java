@@ -0,0 +1,66 @@
+package recordPattern;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * レコードファイルの形式.
+ * <pre>
+ *     ヘッダ     ：マジック(4byte) / バージョン(4byte)
+ *     ブロック群 ：レコード(UUID上位 8byte / UUID下位 8byte / age varint / nameのコード varint)の並び
+ *                  age は null を0、それ以外をzigzag符号化して+1した値、nameのコードは null を0、それ以外を+1した値
+ *     辞書       ：名前の件数 varint / 名前(UTF-8のバイト数 varint + バイト列)の並び（コード順）
+ *     索引       ：ブロックごとに 先頭UUID上位 8byte / 先頭UUID下位 8byte / 開始位置 8byte / 件数 4byte
+ *     トレーラ   ：辞書の位置 8byte / 索引の位置 8byte / ブロック数 4byte / レコード件数 8byte / マジック 4byte
+ *     レコードはPrimaryKey順に並び、索引はブロックの先頭PrimaryKey順に並ぶ。
+ *     PrimaryKey順は{@link Record#comparePrimaryKeys}の順(上位64bit・下位64bitの符号なし比較)とし、
+ *     点検索の二分探索はこの順を前提とする。
+ *     バージョン1は符号付き比較(UUID#compareTo)の順で書き込んでいたため、読み込まない。
+ * </pre>
+ */
+final class RecordFileFormat {
+    static final int MAGIC = 0x53524631; // "SRF1"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    static final int INDEX_ENTRY_SIZE = 28;
+    static final int TRAILER_SIZE = 32;
+
+    private RecordFileFormat() {
+    }
+
+    static void writeVarint(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    static long encodeAge(Integer age) {
+        if (age == null) {
+            return 0;
+        }
+        return (((age << 1) ^ (age >> 31)) & 0xFFFFFFFFL) + 1;
+    }
+
+    static Integer decodeAge(long encoded) {
+        if (encoded == 0) {
+            return null;
+        }
+        int zigzag = (int) (encoded - 1);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,210 @@
+package recordPattern;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * レコードファイルを読み込む.
+ * <pre>
+ *     開く際にトレーラ、辞書、索引のみを読み込み、レコードはブロック単位で必要な分だけ読み込む。
+ *     PrimaryKeyによる検索は、索引の二分探索で対象ブロックを特定し、そのブロックのみを読み込んで行う。
+ *     走査はPrimaryKey順のため、{@link SortMergeClassifier}のマスター側の入力としてそのまま使える。
+ *     形式は{@link RecordFileFormat}を参照。
+ * </pre>
+ */
+public class RecordFileReader implements Iterable<Record>, Closeable {
+    private final FileChannel channel;
+    private final NameDictionary dictionary;
+    // ファイル内のコード順の名前
+    private final String[] fileNames;
+    private final long[] blockMostSigBits;
+    private final long[] blockLeastSigBits;
+    // ブロックの開始位置。末尾に辞書の位置(最終ブロックの終了位置)を加えた、ブロック数+1の大きさ
+    private final long[] blockOffsets;
+    private final int[] blockSizes;
+    private final long recordCount;
+
+    public RecordFileReader(Path file) throws IOException {
+        this(file, new NameDictionary());
+    }
+
+    /**
+     * @param file       レコードファイル
+     * @param dictionary 読み込んだレコードを束縛する名前の辞書。ファイルの辞書の名前を登録する
+     */
+    public RecordFileReader(Path file, NameDictionary dictionary) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            ByteBuffer header = read(0, RecordFileFormat.HEADER_SIZE);
+            if (fileSize < RecordFileFormat.HEADER_SIZE + RecordFileFormat.TRAILER_SIZE
+                    || header.getInt() != RecordFileFormat.MAGIC) {
+                throw new IOException("not a record file: " + file);
+            }
+            if (header.getInt() != RecordFileFormat.VERSION) {
+                throw new IOException("unsupported record file version: " + file);
+            }
+
+            ByteBuffer trailer = read(fileSize - RecordFileFormat.TRAILER_SIZE, RecordFileFormat.TRAILER_SIZE);
+            long dictionaryOffset = trailer.getLong();
+            long indexOffset = trailer.getLong();
+            int blockCount = trailer.getInt();
+            this.recordCount = trailer.getLong();
+            if (trailer.getInt() != RecordFileFormat.MAGIC) {
+                throw new IOException("record file is truncated: " + file);
+            }
+
+            ByteBuffer names = read(dictionaryOffset, (int) (indexOffset - dictionaryOffset));
+            int nameCount = (int) RecordFileFormat.readVarint(names);
+            this.fileNames = new String[nameCount];
+            for (int code = 0; code < nameCount; code++) {
+                byte[] name = new byte[(int) RecordFileFormat.readVarint(names)];
+                names.get(name);
+                fileNames[code] = new String(name, StandardCharsets.UTF_8);
+                dictionary.encode(fileNames[code]);
+            }
+            this.dictionary = dictionary;
+
+            ByteBuffer index = read(indexOffset, blockCount * RecordFileFormat.INDEX_ENTRY_SIZE);
+            this.blockMostSigBits = new long[blockCount];
+            this.blockLeastSigBits = new long[blockCount];
+            this.blockOffsets = new long[blockCount + 1];
+            this.blockSizes = new int[blockCount];
+            for (int block = 0; block < blockCount; block++) {
+                blockMostSigBits[block] = index.getLong();
+                blockLeastSigBits[block] = index.getLong();
+                blockOffsets[block] = index.getLong();
+                blockSizes[block] = index.getInt();
+            }
+            blockOffsets[blockCount] = dictionaryOffset;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long size() {
+        return recordCount;
+    }
+
+    /**
+     * PrimaryKeyに一致するレコードを得る。対象のブロックのみを読み込む.
+     *
+     * @param primaryKey PrimaryKey
+     * @return レコード。存在しない場合null
+     */
+    public Record get(UUID primaryKey) {
+        int block = findBlock(primaryKey);
+        if (block < 0) {
+            return null;
+        }
+        ByteBuffer buffer = readBlock(block);
+        long msb = primaryKey.getMostSignificantBits();
+        long lsb = primaryKey.getLeastSignificantBits();
+        for (int i = 0; i < blockSizes[block]; i++) {
+            long recordMsb = buffer.getLong();
+            long recordLsb = buffer.getLong();
+            if (recordMsb == msb && recordLsb == lsb) {
+                return decode(recordMsb, recordLsb, buffer);
+            }
+            RecordFileFormat.readVarint(buffer);
+            RecordFileFormat.readVarint(buffer);
+        }
+        return null;
+    }
+
+    /**
+     * PrimaryKey順にレコードを走査する。ブロック単位で読み込む.
+     */
+    @Override
+    public Iterator<Record> iterator() {
+        return new Iterator<Record>() {
+            private int block = -1;
+            private int remaining;
+            private ByteBuffer buffer;
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0 && block + 1 < blockSizes.length) {
+                    block++;
+                    buffer = readBlock(block);
+                    remaining = blockSizes[block];
+                }
+                return remaining > 0;
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                return decode(buffer.getLong(), buffer.getLong(), buffer);
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 先頭PrimaryKeyがprimaryKey以下である最後のブロックを二分探索する.
+     *
+     * @return ブロック番号。該当しない場合-1
+     */
+    private int findBlock(UUID primaryKey) {
+        int low = 0;
+        int high = blockSizes.length - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Record.comparePrimaryKeys(new UUID(blockMostSigBits[middle], blockLeastSigBits[middle]), primaryKey) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    private Record decode(long msb, long lsb, ByteBuffer buffer) {
+        Record record = new Record();
+        record.setPrimaryKey(new UUID(msb, lsb));
+        record.setAge(RecordFileFormat.decodeAge(RecordFileFormat.readVarint(buffer)));
+        int nameCode = (int) RecordFileFormat.readVarint(buffer) - 1;
+        record.setName(nameCode < 0 ? null : fileNames[nameCode]);
+        record.bindName(dictionary);
+        return record;
+    }
+
+    private ByteBuffer readBlock(int block) {
+        try {
+            return read(blockOffsets[block], (int) (blockOffsets[block + 1] - blockOffsets[block]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of record file at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
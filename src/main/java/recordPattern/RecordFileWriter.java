@@ -0,0 +1,139 @@
+package recordPattern;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * レコードファイルを書き込む.
+ * <pre>
+ *     レコードは{@link Record#PRIMARY_KEY_ORDER}の昇順で、重複なく書き込むこと。この前提が崩れた時点で{@link IllegalStateException}をスローする。
+ *     形式は{@link RecordFileFormat}を参照。
+ * </pre>
+ */
+public class RecordFileWriter implements Closeable {
+    private static final int DEFAULT_RECORDS_PER_BLOCK = 1024;
+
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final int recordsPerBlock;
+    private final NameDictionary dictionary = new NameDictionary();
+    // ブロックごとの 先頭UUID上位, 先頭UUID下位, 開始位置, 件数
+    private final List<long[]> index = new ArrayList<>();
+    private UUID lastKey;
+    private long recordCount;
+    private boolean closed;
+
+    public RecordFileWriter(Path file) throws IOException {
+        this(file, DEFAULT_RECORDS_PER_BLOCK);
+    }
+
+    /**
+     * @param file            書き込み先
+     * @param recordsPerBlock 1ブロックのレコード件数。点検索で読み込む単位になる
+     */
+    public RecordFileWriter(Path file, int recordsPerBlock) throws IOException {
+        if (recordsPerBlock < 1) {
+            throw new IllegalArgumentException("recordsPerBlock must be positive: " + recordsPerBlock);
+        }
+        this.recordsPerBlock = recordsPerBlock;
+        this.counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.out = new DataOutputStream(counter);
+        out.writeInt(RecordFileFormat.MAGIC);
+        out.writeInt(RecordFileFormat.VERSION);
+    }
+
+    /**
+     * レコードを書き込む.
+     *
+     * @param record レコード
+     */
+    public void write(Record record) throws IOException {
+        UUID key = record.getPrimaryKey();
+        if (lastKey != null && Record.comparePrimaryKeys(lastKey, key) >= 0) {
+            throw new IllegalStateException(String.format(
+                    "records are not in ascending primary key order: %s -> %s", lastKey, key));
+        }
+        lastKey = key;
+
+        if (recordCount % recordsPerBlock == 0) {
+            index.add(new long[]{key.getMostSignificantBits(), key.getLeastSignificantBits(), counter.count, 0});
+        }
+        out.writeLong(key.getMostSignificantBits());
+        out.writeLong(key.getLeastSignificantBits());
+        RecordFileFormat.writeVarint(out, RecordFileFormat.encodeAge(record.getAge()));
+        RecordFileFormat.writeVarint(out, dictionary.encode(record.getName()) + 1L);
+
+        index.get(index.size() - 1)[3]++;
+        recordCount++;
+    }
+
+    public void writeAll(Iterable<Record> records) throws IOException {
+        for (Record record : records) {
+            write(record);
+        }
+    }
+
+    /**
+     * 辞書、索引、トレーラーを書き込んで閉じる。2回目以降の呼び出しでは何もしない.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            long dictionaryOffset = counter.count;
+            RecordFileFormat.writeVarint(out, dictionary.size());
+            for (int code = 0; code < dictionary.size(); code++) {
+                byte[] name = dictionary.decode(code).getBytes(StandardCharsets.UTF_8);
+                RecordFileFormat.writeVarint(out, name.length);
+                out.write(name);
+            }
+
+            long indexOffset = counter.count;
+            for (long[] entry : index) {
+                out.writeLong(entry[0]);
+                out.writeLong(entry[1]);
+                out.writeLong(entry[2]);
+                out.writeInt((int) entry[3]);
+            }
+
+            out.writeLong(dictionaryOffset);
+            out.writeLong(indexOffset);
+            out.writeInt(index.size());
+            out.writeLong(recordCount);
+            out.writeInt(RecordFileFormat.MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * 書き込んだバイト数をlongで数える（DataOutputStream#sizeはintで溢れるため）.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
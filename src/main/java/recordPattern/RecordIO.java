@@ -0,0 +1,58 @@
+package recordPattern;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * レコードをバイナリで読み書きする.
+ * <pre>
+ *     形式：継続マーカー(1byte) / UUID上位(8byte) / UUID下位(8byte) / null判定フラグ(1byte) / age(4byte) / name(UTF)
+ *     継続マーカーが0の場合は終端を表す。
+ * </pre>
+ */
+final class RecordIO {
+    private static final int AGE_PRESENT = 1;
+    private static final int NAME_PRESENT = 2;
+
+    private RecordIO() {
+    }
+
+    static void write(DataOutput out, Record record) throws IOException {
+        out.writeByte(1);
+        out.writeLong(record.getPrimaryKey().getMostSignificantBits());
+        out.writeLong(record.getPrimaryKey().getLeastSignificantBits());
+        int flags = (record.getAge() != null ? AGE_PRESENT : 0) | (record.getName() != null ? NAME_PRESENT : 0);
+        out.writeByte(flags);
+        if (record.getAge() != null) {
+            out.writeInt(record.getAge());
+        }
+        if (record.getName() != null) {
+            out.writeUTF(record.getName());
+        }
+    }
+
+    static void writeEnd(DataOutput out) throws IOException {
+        out.writeByte(0);
+    }
+
+    /**
+     * @return レコード。終端の場合null
+     */
+    static Record read(DataInput in) throws IOException {
+        if (in.readByte() == 0) {
+            return null;
+        }
+        Record record = new Record();
+        record.setPrimaryKey(new UUID(in.readLong(), in.readLong()));
+        int flags = in.readByte();
+        if ((flags & AGE_PRESENT) != 0) {
+            record.setAge(in.readInt());
+        }
+        if ((flags & NAME_PRESENT) != 0) {
+            record.setName(in.readUTF());
+        }
+        return record;
+    }
+}
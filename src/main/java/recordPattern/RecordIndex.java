@@ -0,0 +1,228 @@
+package recordPattern;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * PrimaryKey(UUID)からレコードを引くための索引.
+ * <pre>
+ *     UUIDを上位64bit・下位64bitの2つのlongとして保持するオープンアドレス法(線形探索)のハッシュ表。
+ *     集合ごとに一度だけ構築し、以降の検索は1回のプローブ(衝突時のみ隣接スロット)で完了する。
+ *     同じPrimaryKeyのレコードが複数ある場合は、最初に登録されたレコードを保持する。
+ *     （{@code Set#stream().filter(..).findFirst()}による検索と同じ結果になる）
+ * </pre>
+ */
+public class RecordIndex {
+    // 負荷率の上限。これを超えたら表を倍に拡張する
+    private static final double MAX_LOAD_FACTOR = 0.5;
+
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+    private Record[] records;
+    private int mask;
+    private int size;
+
+    public RecordIndex() {
+        this(16);
+    }
+
+    public RecordIndex(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * レコード群から索引を構築する.
+     *
+     * @param records レコード群
+     * @return 索引
+     */
+    public static RecordIndex of(Collection<Record> records) {
+        RecordIndex index = new RecordIndex(records.size());
+        records.forEach(index::putIfAbsent);
+        return index;
+    }
+
+    /**
+     * レコードを登録する。同じPrimaryKeyが登録済みの場合は何もしない.
+     *
+     * @param record レコード
+     * @return 登録した場合true
+     */
+    public boolean putIfAbsent(Record record) {
+        UUID key = record.getPrimaryKey();
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+
+        int slot = slotOf(msb, lsb);
+        if (records[slot] != null) {
+            return false;
+        }
+        insert(slot, msb, lsb, record);
+        return true;
+    }
+
+    /**
+     * レコードを登録する。同じPrimaryKeyが登録済みの場合は置き換える.
+     *
+     * @param record レコード
+     * @return 置き換えたレコード。新たに登録した場合null
+     */
+    public Record put(Record record) {
+        UUID key = record.getPrimaryKey();
+        long msb = key.getMostSignificantBits();
+        long lsb = key.getLeastSignificantBits();
+
+        int slot = slotOf(msb, lsb);
+        Record previous = records[slot];
+        if (previous != null) {
+            records[slot] = record;
+            return previous;
+        }
+        insert(slot, msb, lsb, record);
+        return null;
+    }
+
+    /**
+     * PrimaryKeyに一致するレコードを削除する.
+     * <pre>
+     *     削除したスロットより後ろの同じ探索列の要素を前に詰める(後方シフト)ため、墓標は残らない。
+     * </pre>
+     *
+     * @param primaryKey PrimaryKey
+     * @return 削除したレコード。存在しない場合null
+     */
+    public Record remove(UUID primaryKey) {
+        int hole = slotOf(primaryKey.getMostSignificantBits(), primaryKey.getLeastSignificantBits());
+        Record removed = records[hole];
+        if (removed == null) {
+            return null;
+        }
+
+        for (int slot = (hole + 1) & mask; records[slot] != null; slot = (slot + 1) & mask) {
+            int home = hash(mostSigBits[slot], leastSigBits[slot]) & mask;
+            // 本来の位置から現在位置までの間に空きが入る場合のみ、空きへ移動できる
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                mostSigBits[hole] = mostSigBits[slot];
+                leastSigBits[hole] = leastSigBits[slot];
+                records[hole] = records[slot];
+                hole = slot;
+            }
+        }
+        records[hole] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * PrimaryKeyに一致するレコードを得る.
+     *
+     * @param primaryKey PrimaryKey
+     * @return レコード。存在しない場合null
+     */
+    public Record get(UUID primaryKey) {
+        return records[slotOf(primaryKey.getMostSignificantBits(), primaryKey.getLeastSignificantBits())];
+    }
+
+    public boolean contains(UUID primaryKey) {
+        return get(primaryKey) != null;
+    }
+
+    /**
+     * PrimaryKeyに一致するレコードのスロット番号を得る.
+     * <pre>
+     *     スロット番号は索引が拡張されるまで変わらないため、
+     *     {@link #capacity()}の大きさの配列で照合済みなどの状態を管理できる。
+     * </pre>
+     *
+     * @param primaryKey PrimaryKey
+     * @return スロット番号。存在しない場合-1
+     */
+    public int indexOf(UUID primaryKey) {
+        int slot = slotOf(primaryKey.getMostSignificantBits(), primaryKey.getLeastSignificantBits());
+        return records[slot] != null ? slot : -1;
+    }
+
+    /**
+     * スロットのレコードを得る.
+     *
+     * @param slot スロット番号
+     * @return レコード。空きスロットの場合null
+     */
+    public Record recordAt(int slot) {
+        return records[slot];
+    }
+
+    public int capacity() {
+        return records.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * キーが格納されているスロット、または格納すべき空きスロットを得る.
+     */
+    private int slotOf(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (records[slot] != null) {
+            if (mostSigBits[slot] == msb && leastSigBits[slot] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, long msb, long lsb, Record record) {
+        if (size + 1 > records.length * MAX_LOAD_FACTOR) {
+            resize(records.length * 2);
+            slot = slotOf(msb, lsb);
+        }
+        mostSigBits[slot] = msb;
+        leastSigBits[slot] = lsb;
+        records[slot] = record;
+        size++;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMostSigBits = mostSigBits;
+        long[] oldLeastSigBits = leastSigBits;
+        Record[] oldRecords = records;
+
+        allocate(capacity);
+        for (int i = 0; i < oldRecords.length; i++) {
+            if (oldRecords[i] != null) {
+                int slot = slotOf(oldMostSigBits[i], oldLeastSigBits[i]);
+                mostSigBits[slot] = oldMostSigBits[i];
+                leastSigBits[slot] = oldLeastSigBits[i];
+                records[slot] = oldRecords[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mostSigBits = new long[capacity];
+        leastSigBits = new long[capacity];
+        records = new Record[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * UUIDの上位64bit・下位64bitからハッシュ値を得る。PrimaryKeyのハッシュ表で共通に使う.
+     *
+     * @param msb UUIDの上位64bit
+     * @param lsb UUIDの下位64bit
+     * @return ハッシュ値
+     */
+    public static int hash(long msb, long lsb) {
+        // UUIDはほぼ一様だが、連番的なキーでも偏らないようにmixする
+        long h = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int required = (int) Math.min(1 << 30, Math.max(16L, (long) Math.ceil(expectedSize / MAX_LOAD_FACTOR)));
+        return Integer.highestOneBit(required - 1) << 1;
+    }
+}
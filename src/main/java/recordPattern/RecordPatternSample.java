@@ -1,11 +1,11 @@
 package recordPattern;
 
-import org.apache.commons.beanutils.BeanUtils;
-import org.apache.commons.lang3.RandomUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -13,14 +13,17 @@ import java.util.stream.Collectors;
  * レコードの集合操作サンプル
  */
 public class RecordPatternSample {
+    // サンプルデータを生成する乱数のシード。実行ごとに同じデータとなる
+    private static final long SEED = 20180401L;
+
+    private static final PropertyCopier<ModifiedRecord, Record> TO_RECORD =
+            PropertyCopier.of(ModifiedRecord.class, Record.class);
+
     private Logger logger = LoggerFactory.getLogger(RecordPatternSample.class);
 
-    enum ModifiedPattern {
-        NEW,
-        UPDATE,
-        DELETE,
-        NO_MODIFIED
-    }
+    // -DrecordPattern.metrics=true の場合、フェーズごとの所要時間と件数を計測し、JMXで公開する
+    private final DiffMetrics metrics = Boolean.getBoolean("recordPattern.metrics")
+            ? new DiffMetrics() : DiffMetrics.disabled();
 
     // ソートして出力したいので、Recordに実装したComparableをTreeSetにて有効化する
     // マスタレコード群
@@ -29,131 +32,89 @@ public class RecordPatternSample {
     private SortedSet<Record> requestRecords = new TreeSet<>();
 
     public RecordPatternSample() {
-        // 100個の要素を持つレコードを生成する
-        int totalSize = 100;
-        for (int i = 0; i < totalSize; i++) {
-            // age は1～10の範囲で生成し、
-            // name は2文字の英数字の組み合わせを生成する
-            // これにより意図的にRecord#equalsの等価条件を満たした要素を複数発生させることを試みる
-            masterRecords.add(createRandomRecord());
-        }
-
-        int createSize = masterRecords.size();
-
-        // リクエストレコード群は、0～50個はマスタレコード群のUUIDを設定することで、更新用のリクエストデータとする。
-        int existsDataCount = createSize / 2;
-        List<Record> createdList = masterRecords.stream().collect(Collectors.toList());
-        for (int i = 0; i < existsDataCount; i++) {
-            Record requestData = createRandomRecord();
-            requestData.setPrimaryKey(createdList.get(i).getPrimaryKey());
-            requestRecords.add(requestData);
-        }
-        while (requestRecords.size() < createSize) {
-            requestRecords.add(createRandomRecord());
-        }
-    }
-
-    public static void main(String[] args) {
-        new RecordPatternSample().exec();
-    }
-
-    private void exec() {
-        logger.info("A.size:{},B.size:{}", masterRecords.size(), requestRecords.size());
-        // print用の和集合を得る
-        Set<Record> aPlusBSet = getPlusSet(masterRecords, requestRecords);
-        logger.info("plus.size():{}", aPlusBSet.size());
-
-        // 和集合をベースに、マスターレコード群、リクエストレコード群の等価要素を出力する
-        // ここでＡ集合およびＢ集合の両方が出力されたものは、後続で出力する積集合と同じ要素になるはずである
-        logger.info("print A , B.");
-        aPlusBSet.stream().forEach(e -> {
-            Optional<Record> masterRecord = searchSameRecord(masterRecords, e);
-            Optional<Record> requestRecord = searchSameRecord(requestRecords, e);
-
-            ModifiedPattern modifiedPattern = getModifiedPattern(masterRecord, requestRecord);
-
-            logger.info("{}\t master:{},\t request:{}",
-                    modifiedPattern,
-                    toString(masterRecord),
-                    toString(requestRecord));
-        });
-
-        // リクエストレコード群にのみ存在する集合を得る。つまり、マスタレコード群に存在しない＝新規データを得る。
-        Set<Record> newRecordSet = getSubtractSet(requestRecords, masterRecords);
-        logger.info("新規データの表示。");
-        newRecordSet.forEach(e -> logger.info("new :{}", toString(Optional.of(e))));
-
-        // マスタレコード群にのみ存在する集合を得る。つまり、リクエストレコード群に存在しない＝削除データを得る
-        Set<Record> deleteRecordSet = getSubtractSet(masterRecords, requestRecords);
-        logger.info("削除データの表示。");
-        deleteRecordSet.forEach(e -> logger.info("delete :{}", toString(Optional.of(e))));
-
-        // マスターレコード群とリクエストレコード群の積集合を得る。つまり更新データを得る
-        Set<Record> updateRecordSet = getUpdateSet(masterRecords, requestRecords);
-        logger.info("更新データの表示。");
-        updateRecordSet.forEach(e -> logger.info("update :{}", toString(Optional.of(e))));
-
-        // マスタレコード群とリクエストレコード群の双方に存在し、すべてが完全一致する
-        Set<Record> noModifiedSet = getSameSet(masterRecords, requestRecords);
-        logger.info("更新なしデータの表示。");
-        noModifiedSet.forEach(e -> logger.info("no modified :{}", toString(Optional.of(e))));
+        // 100個の要素を持つマスターレコードを生成し、
+        // 約半数を削除、約4割を更新、残りを更新なしとしたリクエストに、同数の新規データを加える
+        // age は1～4の範囲で生成し、name は6種類から選ぶ
+        // これにより意図的にRecord#equalsの等価条件を満たした要素を複数発生させることを試みる
+        Workload workload = WorkloadGenerator.builder()
+                .seed(SEED)
+                .masterSize(100)
+                .newRatio(0.5)
+                .updateRatio(0.4)
+                .deleteRatio(0.5)
+                .maxAge(4)
+                .build()
+                .generate();
+        masterRecords.addAll(workload.getMasterRecords());
+        requestRecords.addAll(workload.getRequestRecords());
     }
 
     /**
-     * マスター更新パターンを得る
+     * 任意のマスターレコード群、リクエストレコード群で集合操作を行う（ベンチマーク用）
      *
-     * @param masterRecord  マスターレコード
-     * @param requestRecord リクエストレコード
-     * @return マスター更新パターン
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
      */
-    private ModifiedPattern getModifiedPattern(Optional<Record> masterRecord, Optional<Record> requestRecord) {
-
-        if (masterRecord.isPresent() && requestRecord.isPresent()) {
-
-            // ModifiedRecordに置き換えることで、
-            // PKを除いた同値性の検証を行い、更新有無を確定させる
-            ModifiedRecord masterModifiedRecord = new ModifiedRecord(masterRecord.get());
-            ModifiedRecord requestModifiedRecord = new ModifiedRecord(requestRecord.get());
+    RecordPatternSample(SortedSet<Record> masterRecords, SortedSet<Record> requestRecords) {
+        this.masterRecords = masterRecords;
+        this.requestRecords = requestRecords;
+    }
 
-            if (masterModifiedRecord.equals(requestModifiedRecord)) {
-                return ModifiedPattern.NO_MODIFIED;
-            }
+    /**
+     * 変更は件数と例のみをログ出力する.
+     * <pre>
+     *     -DrecordPattern.report.samples=N  パターンごとに出力する例の件数(既定は3件)
+     *     -DrecordPattern.report.file=PATH  すべての変更を書き出す変更ファイル(指定した場合のみ)
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+        int samplesPerPattern = Integer.getInteger("recordPattern.report.samples", 3);
+        String changeFile = System.getProperty("recordPattern.report.file");
+        new RecordPatternSample().exec(samplesPerPattern, changeFile == null ? null : Paths.get(changeFile));
+    }
 
-            return ModifiedPattern.UPDATE;
+    private void exec(int samplesPerPattern, Path changeFile) throws IOException {
+        if (metrics.isEnabled()) {
+            metrics.register("recordPattern:type=DiffMetrics");
         }
+        logger.info("A.size:{},B.size:{}", masterRecords.size(), requestRecords.size());
 
-        if (!masterRecord.isPresent()) {
-            return ModifiedPattern.NEW;
+        // 新規、削除、更新、更新なしの分類は、両レコード群を一度だけ走査して得る
+        // 出力はパターンごとの件数と例にまとめ、すべての更新は変更ファイルの指定時のみ書き出す
+        // 索引の構築(INDEX)、分類(CLASSIFY)、出力(EMIT)を分類器が個別に計測する
+        try (ChangeReporter reporter = new ChangeReporter(logger, samplesPerPattern, changeFile)) {
+            new ChangeClassifier(0, metrics).classify(masterRecords, requestRecords, reporter);
+            reporter.report();
         }
 
-        if (!requestRecord.isPresent()) {
-            return ModifiedPattern.DELETE;
+        if (metrics.isEnabled()) {
+            logger.info("metrics:{}", metrics);
         }
-
-        throw new IllegalStateException();
     }
 
     /**
-     * Setから同じPrimaryKeyのレコードを探す
+     * マスター更新パターンを得る
+     * <pre>
+     *     レコードごとに呼ばれるため、Optionalや比較用のオブジェクトを生成せずに判定する。
+     * </pre>
      *
-     * @param set 集合
-     * @param e   レコード
-     * @return Optionalなレコード
+     * @param masterRecord  マスターレコード。存在しない場合null
+     * @param requestRecord リクエストレコード。存在しない場合null
+     * @return マスター更新パターン
      */
-    private Optional<Record> searchSameRecord(Set<Record> set, Record e) {
-        return set.stream().filter(t -> t.getPrimaryKey().equals(e.getPrimaryKey())).findFirst();
+    ModifiedPattern getModifiedPattern(Record masterRecord, Record requestRecord) {
+        return ChangeClassifier.patternOf(masterRecord, requestRecord);
     }
 
     /**
-     * UUIDと年齢と名前の文字列を得る。
+     * 集合の索引から同じPrimaryKeyのレコードを探す
      *
-     * @param e レコード
-     * @return UUIDと年齢と名前をコロンで挟んだ文字列
+     * @param index 集合の索引
+     * @param e     レコード
+     * @return レコード。存在しない場合null
      */
-    private String toString(Optional<Record> e) {
-        if (!e.isPresent())
-            return "nothing data";
-        return e.map(e2 -> String.join(",", e2.getPrimaryKey().toString(), String.valueOf(e2.getAge()), e2.getName())).get();
+    Record searchSameRecord(RecordIndex index, Record e) {
+        return index.get(e.getPrimaryKey());
     }
 
     /**
@@ -163,13 +124,14 @@ public class RecordPatternSample {
      * @param setB 集合Ｂ
      * @return 積集合
      */
-    private Set<Record> getUpdateSet(final Set<Record> setA, final Set<Record> setB) {
-        SortedSet<Record> recordSetCopyA = new TreeSet<>(setA);
-        SortedSet<Record> recordSetCopyB = new TreeSet<>(setB);
+    Set<Record> getUpdateSet(final Set<Record> setA, final Set<Record> setB) {
+        SortedSet<Record> recordSetCopyA = copyOf(setA);
+        SortedSet<Record> recordSetCopyB = copyOf(setB);
 
         // PrimaryKey が一致する積集合を得る
+        RecordIndex indexB = RecordIndex.of(recordSetCopyB);
         Set<UUID> samePrimarySet = recordSetCopyA.stream()
-                .filter(e -> recordSetCopyB.stream().anyMatch(b -> e.getPrimaryKey().equals(b.getPrimaryKey())))
+                .filter(e -> indexB.contains(e.getPrimaryKey()))
                 .map(Record::getPrimaryKey)
                 .collect(Collectors.toSet());
 
@@ -188,21 +150,27 @@ public class RecordPatternSample {
 
         modifiedRecordSetA.removeAll(modifiedRecordSetB);
 
-        Set<Record> returnSet = modifiedRecordSetA.stream().map(e -> {
-            Record record = new Record();
-            try {
-                BeanUtils.copyProperties(record, e);
-            } catch (IllegalAccessException ex) {
-                ex.printStackTrace();
-            } catch (InvocationTargetException ex) {
-                ex.printStackTrace();
-            }
-            return record;
-        }).collect(Collectors.toSet());
+        Set<Record> returnSet = modifiedRecordSetA.stream()
+                .map(e -> TO_RECORD.copy(e, new Record()))
+                .collect(Collectors.toSet());
 
         return returnSet;
     }
 
+    /**
+     * 集合をコピーする。SortedSetの場合は、その順序(Comparator)を引き継ぐ
+     * <pre>
+     *     {@code new TreeSet<>(Set)}はCollectionのコンストラクタが選ばれ、Record#compareTo(age, name順)となるため、
+     *     PrimaryKey順の集合を渡すとage・nameが同じ要素が1つにまとまってしまう。
+     * </pre>
+     *
+     * @param set 集合
+     * @return コピーした集合
+     */
+    private static SortedSet<Record> copyOf(Set<Record> set) {
+        return set instanceof SortedSet ? new TreeSet<>((SortedSet<Record>) set) : new TreeSet<>(set);
+    }
+
     /**
      * 和集合を得る。
      *
@@ -210,7 +178,7 @@ public class RecordPatternSample {
      * @param setB 集合Ｂ
      * @return 集合Ａと集合Ｂの和集合
      */
-    private Set<Record> getPlusSet(final SortedSet<Record> setA, final SortedSet<Record> setB) {
+    Set<Record> getPlusSet(final SortedSet<Record> setA, final SortedSet<Record> setB) {
         SortedSet<Record> recordSetAcopy = new TreeSet<>(setA);
         SortedSet<Record> recordSetBcopy = new TreeSet<>(setB);
 
@@ -226,7 +194,7 @@ public class RecordPatternSample {
      * @param setB 集合Ｂ
      * @return setAからsetBを引いた差集合
      */
-    private Set<Record> getSubtractSet(SortedSet<Record> setA, SortedSet<Record> setB) {
+    Set<Record> getSubtractSet(SortedSet<Record> setA, SortedSet<Record> setB) {
         SortedSet<Record> recordSetAcopy = new TreeSet<>(setA);
         SortedSet<Record> recordSetBcopy = new TreeSet<>(setB);
 
@@ -242,7 +210,7 @@ public class RecordPatternSample {
      * @param setB Ｂ集合
      * @return Ａ集合とＢ集合のすべての項目が一致する同値集合
      */
-    private Set<Record> getSameSet(SortedSet<Record> setA, SortedSet<Record> setB) {
+    Set<Record> getSameSet(SortedSet<Record> setA, SortedSet<Record> setB) {
         SortedSet<Record> recordSetAcopy = new TreeSet<>(setA);
         SortedSet<Record> recordSetBcopy = new TreeSet<>(setB);
 
@@ -250,25 +218,4 @@ public class RecordPatternSample {
 
         return recordSetAcopy;
     }
-
-    /**
-     * ランダムな値を持つレコードを生成する。
-     * <ul>
-     * <li>id:UUID</li>
-     * <li>年齢：1～10のいずれか</li>
-     * <li>名前：1桁の英数字の組み合わせ</li>
-     * </ul>
-     *
-     * @return ランダムな値を持つレコード
-     */
-    Record createRandomRecord() {
-        Record record = new Record();
-        record.setPrimaryKey(UUID.randomUUID());
-        record.setAge(RandomUtils.nextInt(1, 5));
-
-        String[] names = new String[]{"ichiro", "jiro", "saburo", "shiro", "goro", "rokuro"};
-        List<String> nameList = Arrays.asList(names);
-        record.setName(nameList.get(RandomUtils.nextInt(1, nameList.size())));
-        return record;
-    }
 }
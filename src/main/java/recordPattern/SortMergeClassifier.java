@@ -0,0 +1,128 @@
+package recordPattern;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * PrimaryKey順に並んだマスターレコード群とリクエストレコード群を、マージ結合で分類する.
+ * <pre>
+ *     両方のカーソルを先頭から1件ずつ進め、PrimaryKeyを比較して分類を確定させる。
+ *     ・マスターのキーが小さい：DELETE
+ *     ・リクエストのキーが小さい：NEW
+ *     ・キーが一致：UPDATE または NO_MODIFIED
+ *     入力は{@link Record#PRIMARY_KEY_ORDER}の順(上位64bit・下位64bitの符号なし比較。UUID文字列の辞書順と同じ)で、
+ *     同じPrimaryKeyを含まないこと。
+ *     この前提が崩れた時点で{@link IllegalStateException}をスローする。
+ *     各カーソルの先頭要素以外は保持しないため、追加のメモリはO(1)である。
+ * </pre>
+ */
+public class SortMergeClassifier {
+
+    /**
+     * 分類して、更新パターンごとの結果を得る.
+     *
+     * @param masterRecords  PrimaryKey順のマスターレコード群
+     * @param requestRecords PrimaryKey順のリクエストレコード群
+     * @return 分類結果
+     */
+    public ClassifyResult classify(Iterable<Record> masterRecords, Iterable<Record> requestRecords) {
+        ClassifyResult result = new ClassifyResult();
+        classify(masterRecords.iterator(), requestRecords.iterator(), result::add);
+        return result;
+    }
+
+    /**
+     * 分類して、PrimaryKey順に更新を通知する.
+     *
+     * @param masterRecords  PrimaryKey順のマスターレコード群
+     * @param requestRecords PrimaryKey順のリクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(Iterator<Record> masterRecords, Iterator<Record> requestRecords, Consumer<Change> sink) {
+        changes(masterRecords, requestRecords).forEachRemaining(sink);
+    }
+
+    /**
+     * PrimaryKey順に分類結果を返すイテレータを得る。分類は要素を取り出すたびに行う.
+     *
+     * @param masterRecords  PrimaryKey順のマスターレコード群
+     * @param requestRecords PrimaryKey順のリクエストレコード群
+     * @return 更新のイテレータ
+     */
+    public Iterator<Change> changes(Iterator<Record> masterRecords, Iterator<Record> requestRecords) {
+        return new MergeIterator(masterRecords, requestRecords);
+    }
+
+    private static class MergeIterator implements Iterator<Change> {
+        private final Cursor master;
+        private final Cursor request;
+
+        MergeIterator(Iterator<Record> masterRecords, Iterator<Record> requestRecords) {
+            this.master = new Cursor("master", masterRecords);
+            this.request = new Cursor("request", requestRecords);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return master.head != null || request.head != null;
+        }
+
+        @Override
+        public Change next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (request.head == null) {
+                return new Change(ModifiedPattern.DELETE, master.advance(), null);
+            }
+            if (master.head == null) {
+                return new Change(ModifiedPattern.NEW, null, request.advance());
+            }
+
+            int compared = Record.PRIMARY_KEY_ORDER.compare(master.head, request.head);
+            if (compared < 0) {
+                return new Change(ModifiedPattern.DELETE, master.advance(), null);
+            }
+            if (compared > 0) {
+                return new Change(ModifiedPattern.NEW, null, request.advance());
+            }
+
+            Record masterRecord = master.advance();
+            return ChangeClassifier.changeOf(masterRecord, request.advance());
+        }
+    }
+
+    /**
+     * 先頭要素を先読みし、PrimaryKeyの昇順を検証するカーソル.
+     */
+    private static class Cursor {
+        private final String name;
+        private final Iterator<Record> iterator;
+        private Record head;
+
+        Cursor(String name, Iterator<Record> iterator) {
+            this.name = name;
+            this.iterator = iterator;
+            this.head = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        /**
+         * 先頭要素を返し、カーソルを1件進める.
+         */
+        Record advance() {
+            Record current = head;
+            head = iterator.hasNext() ? iterator.next() : null;
+            if (head != null) {
+                UUID previousKey = current.getPrimaryKey();
+                if (Record.comparePrimaryKeys(previousKey, head.getPrimaryKey()) >= 0) {
+                    throw new IllegalStateException(String.format(
+                            "%s records are not in ascending primary key order: %s -> %s",
+                            name, previousKey, head.getPrimaryKey()));
+                }
+            }
+            return current;
+        }
+    }
+}
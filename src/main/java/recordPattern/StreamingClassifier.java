@@ -0,0 +1,115 @@
+package recordPattern;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * マスターレコード群とリクエストレコード群を、全件をメモリに載せずに逐次分類する.
+ * <pre>
+ *     各入力を最大{@code window}件の並べ替えバッファに通してPrimaryKey順に整え、
+ *     {@link SortMergeClassifier}で分類しながら、見つかった順に更新を通知する。
+ *     保持するレコードは入力ごとに最大{@code window}件であり、データ件数には依存しない。
+ *     入力はおおむね{@link Record#PRIMARY_KEY_ORDER}の順であること（本来の位置から{@code window}件未満のずれは許容する）。
+ *     この順は上位64bit・下位64bitの符号なし比較で、UUID文字列の辞書順やDBのORDER BYで並べた入力と一致する。
+ *     並べ替えバッファと順序の検証は、いずれもこの順で行う。
+ *     それを超えて順序が乱れていた場合は{@link IllegalStateException}をスローする。
+ * </pre>
+ */
+public class StreamingClassifier {
+    private final SortMergeClassifier mergeClassifier = new SortMergeClassifier();
+    private final int window;
+
+    /**
+     * @param window 入力ごとの並べ替えバッファの件数
+     */
+    public StreamingClassifier(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * 分類して、見つかった順に更新を通知する.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(Stream<Record> masterRecords, Stream<Record> requestRecords, Consumer<Change> sink) {
+        classify(masterRecords.iterator(), requestRecords.iterator(), sink);
+    }
+
+    /**
+     * 分類して、見つかった順に更新を通知する.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @param sink           更新の通知先
+     */
+    public void classify(Iterator<Record> masterRecords, Iterator<Record> requestRecords, Consumer<Change> sink) {
+        changes(masterRecords, requestRecords).forEachRemaining(sink);
+    }
+
+    /**
+     * 分類結果を返すイテレータを得る。入力は要素を取り出すたびに必要な分だけ読み進める.
+     *
+     * @param masterRecords  マスターレコード群
+     * @param requestRecords リクエストレコード群
+     * @return 更新のイテレータ
+     */
+    public Iterator<Change> changes(Iterator<Record> masterRecords, Iterator<Record> requestRecords) {
+        return mergeClassifier.changes(
+                new WindowSortIterator("master", masterRecords, window),
+                new WindowSortIterator("request", requestRecords, window));
+    }
+
+    /**
+     * 最大{@code window}件のバッファで、入力をPrimaryKey順に並べ替えるイテレータ.
+     */
+    private static class WindowSortIterator implements Iterator<Record> {
+        private final String name;
+        private final Iterator<Record> source;
+        private final int window;
+        private final PriorityQueue<Record> buffer;
+        private Record last;
+
+        WindowSortIterator(String name, Iterator<Record> source, int window) {
+            this.name = name;
+            this.source = source;
+            this.window = window;
+            this.buffer = new PriorityQueue<>(window, Record.PRIMARY_KEY_ORDER);
+            fill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !buffer.isEmpty();
+        }
+
+        @Override
+        public Record next() {
+            if (buffer.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            last = buffer.poll();
+            fill();
+            return last;
+        }
+
+        private void fill() {
+            while (buffer.size() < window && source.hasNext()) {
+                Record record = source.next();
+                if (last != null && Record.PRIMARY_KEY_ORDER.compare(record, last) <= 0) {
+                    throw new IllegalStateException(String.format(
+                            "%s record %s is out of order beyond the window of %d records",
+                            name, record.getPrimaryKey(), window));
+                }
+                buffer.add(record);
+            }
+        }
+    }
+}
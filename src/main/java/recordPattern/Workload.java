@@ -0,0 +1,16 @@
+package recordPattern;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * 生成したマスターレコード群とリクエストレコード群.
+ */
+@Value
+public class Workload {
+    private List<Record> masterRecords;
+    private List<Record> requestRecords;
+    // 生成したレコードの名前を束縛した、順序保存の辞書
+    private NameDictionary dictionary;
+}
@@ -0,0 +1,186 @@
+package recordPattern;
+
+import lombok.Builder;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * シードから再現可能なマスターレコード群とリクエストレコード群を生成する.
+ * <pre>
+ *     マスターレコードごとに、削除、更新、更新なしのいずれかを決めてリクエストレコードを作り、
+ *     さらに新規のリクエストレコードを加える。
+ *     ・削除：{@code deleteRatio}の確率でリクエストに含めない
+ *     ・更新：マスターの件数×{@code updateRatio}件(期待値)のリクエストで、age・nameの一方または両方を変える。
+ *             マスターのi番目のレコードが更新される確率は (i+1)^-{@code zipfExponent} に比例する（0で一様）。
+ *             偏りが強く確率が1で頭打ちになる場合は、残りのレコードの確率を引き上げて件数を保つ
+ *     ・新規：マスターの件数×{@code newRatio}件
+ *     生成は固定の大きさのチャンクごとに、シードとチャンク番号から作った乱数で並列に行うため、
+ *     並列度に関わらず同じシードからは同じデータが生成される。
+ * </pre>
+ */
+@Builder
+public class WorkloadGenerator {
+    private static final int CHUNK_SIZE = 1 << 14;
+    private static final String[] BASE_NAMES = {"ichiro", "jiro", "saburo", "shiro", "goro", "rokuro"};
+
+    @Builder.Default
+    private final long seed = 0;
+    @Builder.Default
+    private final int masterSize = 100;
+    @Builder.Default
+    private final double newRatio = 0.25;
+    @Builder.Default
+    private final double updateRatio = 0.25;
+    @Builder.Default
+    private final double deleteRatio = 0.25;
+    // nameの種類数
+    @Builder.Default
+    private final int nameCardinality = BASE_NAMES.length;
+    // age は1～maxAgeの範囲で生成する
+    @Builder.Default
+    private final int maxAge = 100;
+    @Builder.Default
+    private final double zipfExponent = 0;
+    // trueの場合、PrimaryKeyを連番(上位64bitが0)とする
+    @Builder.Default
+    private final boolean sequentialKeys = false;
+
+    /**
+     * マスターレコード群とリクエストレコード群を生成する.
+     *
+     * @return 生成したレコード群
+     */
+    public Workload generate() {
+        validate();
+        List<String> names = names();
+        NameDictionary dictionary = NameDictionary.sorted(names);
+        String[] domain = new TreeSet<>(names).toArray(new String[0]);
+        int newSize = (int) Math.round(masterSize * newRatio);
+        double updateScale = updateScale();
+
+        Record[] masterRecords = new Record[masterSize];
+        Record[][] requestChunks = new Record[chunks(masterSize)][];
+        IntStream.range(0, chunks(masterSize)).parallel().forEach(chunk -> {
+            SplittableRandom random = random(0, chunk);
+            List<Record> requests = new ArrayList<>();
+            for (int i = chunk * CHUNK_SIZE; i < Math.min(masterSize, (chunk + 1) * CHUNK_SIZE); i++) {
+                Record master = record(key(random, i), 1 + random.nextInt(maxAge),
+                        random.nextInt(domain.length), domain, dictionary);
+                masterRecords[i] = master;
+
+                if (random.nextDouble() < deleteRatio) {
+                    continue;
+                }
+                double updateProbability = Math.min(1, updateScale * Math.pow(i + 1, -zipfExponent));
+                if (random.nextDouble() < updateProbability) {
+                    requests.add(update(random, master, domain, dictionary));
+                } else {
+                    requests.add(record(master.getPrimaryKey(), master.getAge(),
+                            dictionary.encode(master.getName()), domain, dictionary));
+                }
+            }
+            requestChunks[chunk] = requests.toArray(new Record[0]);
+        });
+
+        Record[] newRecords = new Record[newSize];
+        IntStream.range(0, chunks(newSize)).parallel().forEach(chunk -> {
+            SplittableRandom random = random(1, chunk);
+            for (int i = chunk * CHUNK_SIZE; i < Math.min(newSize, (chunk + 1) * CHUNK_SIZE); i++) {
+                newRecords[i] = record(key(random, (long) masterSize + i), 1 + random.nextInt(maxAge),
+                        random.nextInt(domain.length), domain, dictionary);
+            }
+        });
+
+        List<Record> requestRecords = new ArrayList<>();
+        for (Record[] requests : requestChunks) {
+            requestRecords.addAll(Arrays.asList(requests));
+        }
+        requestRecords.addAll(Arrays.asList(newRecords));
+        return new Workload(Arrays.asList(masterRecords), requestRecords, dictionary);
+    }
+
+    private void validate() {
+        if (masterSize < 0 || nameCardinality < 1 || maxAge < 2) {
+            throw new IllegalArgumentException(String.format(
+                    "invalid sizes: masterSize=%d, nameCardinality=%d, maxAge=%d", masterSize, nameCardinality, maxAge));
+        }
+        if (newRatio < 0 || updateRatio < 0 || deleteRatio < 0 || updateRatio + deleteRatio > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "invalid ratios: new=%s, update=%s, delete=%s", newRatio, updateRatio, deleteRatio));
+        }
+    }
+
+    private List<String> names() {
+        List<String> names = new ArrayList<>(nameCardinality);
+        for (int i = 0; i < nameCardinality; i++) {
+            names.add(nameCardinality <= BASE_NAMES.length ? BASE_NAMES[i] : String.format("name%06d", i));
+        }
+        return names;
+    }
+
+    /**
+     * 削除されなかったマスターレコードの更新確率が min(1, (i+1)^-s × 戻り値) となるよう、
+     * 更新件数の期待値が masterSize × updateRatio になる係数を得る.
+     * <pre>
+     *     確率が1で頭打ちになる上位k件を除いた残りで期待値を満たすよう、kを先頭から順に増やして求める。
+     * </pre>
+     */
+    private double updateScale() {
+        if (updateRatio == 0) {
+            return 0;
+        }
+        double expected = masterSize * updateRatio / (1 - deleteRatio);
+        double tail = IntStream.rangeClosed(1, masterSize).parallel()
+                .mapToDouble(rank -> Math.pow(rank, -zipfExponent))
+                .sum();
+        for (int capped = 0; capped < masterSize; capped++) {
+            double scale = (expected - capped) / tail;
+            double weight = Math.pow(capped + 1, -zipfExponent);
+            if (scale * weight <= 1) {
+                return scale;
+            }
+            tail -= weight;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private Record update(SplittableRandom random, Record master, String[] domain, NameDictionary dictionary) {
+        int age = master.getAge();
+        int nameCode = dictionary.encode(master.getName());
+        // age、name、両方のいずれを変えるか。nameが1種類の場合はageのみ
+        int target = domain.length > 1 ? random.nextInt(3) : 0;
+        if (target != 1) {
+            age = 1 + (age + random.nextInt(maxAge - 1)) % maxAge;
+        }
+        if (target != 0) {
+            nameCode = (nameCode + 1 + random.nextInt(domain.length - 1)) % domain.length;
+        }
+        return record(master.getPrimaryKey(), age, nameCode, domain, dictionary);
+    }
+
+    private UUID key(SplittableRandom random, long sequence) {
+        return sequentialKeys ? new UUID(0, sequence) : new UUID(random.nextLong(), random.nextLong());
+    }
+
+    private SplittableRandom random(int stream, int chunk) {
+        // チャンクごとに独立した乱数列とするため、シード・系列・チャンク番号を混ぜる
+        long h = seed * 0x9E3779B97F4A7C15L + stream * 0xC2B2AE3D27D4EB4FL + chunk;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return new SplittableRandom(h ^ (h >>> 33));
+    }
+
+    private static Record record(UUID primaryKey, int age, int nameCode, String[] domain, NameDictionary dictionary) {
+        Record record = new Record();
+        record.setPrimaryKey(primaryKey);
+        record.setAge(age);
+        record.setName(domain[nameCode]);
+        record.bindName(dictionary);
+        return record;
+    }
+
+    private static int chunks(int size) {
+        return (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+}
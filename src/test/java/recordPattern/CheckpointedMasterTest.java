@@ -0,0 +1,109 @@
+package recordPattern;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.*;
+
+/**
+ * {@link CheckpointedMaster}の再起動時の復旧.
+ */
+public class CheckpointedMasterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * WALの末尾が途切れている場合は、完全なエントリまでを復旧する.
+     */
+    @Test
+    public void recoverUpToTornWalTail() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Record first = record(1, "A", 20);
+        Record second = record(2, "B", 30);
+        try (CheckpointedMaster master = CheckpointedMaster.open(directory)) {
+            master.apply(new Change(ModifiedPattern.NEW, null, first));
+            master.apply(new Change(ModifiedPattern.NEW, null, second));
+            master.flush();
+        }
+        // 2件目のエントリの書き込み途中で停止した状態にする
+        Path wal = directory.resolve("wal-0.log");
+        try (RandomAccessFile file = new RandomAccessFile(wal.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        long tornLength = Files.size(wal);
+
+        try (CheckpointedMaster master = CheckpointedMaster.open(directory)) {
+            assertEquals(1, master.getSnapshot().size());
+            assertEquals(first, master.getSnapshot().get(first.getPrimaryKey()));
+            assertNull(master.getSnapshot().get(second.getPrimaryKey()));
+            assertTrue(Files.size(wal) < tornLength);
+
+            // 途切れたエントリを切り捨てた後に追記した更新も復旧できる
+            master.apply(new Change(ModifiedPattern.NEW, null, second));
+            master.flush();
+        }
+        try (CheckpointedMaster master = CheckpointedMaster.open(directory)) {
+            assertEquals(2, master.getSnapshot().size());
+            assertEquals(second, master.getSnapshot().get(second.getPrimaryKey()));
+        }
+    }
+
+    /**
+     * チェックポイントの途中で停止した場合は、最新の世代から復旧して古い世代のファイルを削除する.
+     */
+    @Test
+    public void recoverAfterInterruptedCheckpoint() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        Record first = record(1, "A", 20);
+        Record second = record(2, "B", 30);
+        try (CheckpointedMaster master = CheckpointedMaster.open(directory)) {
+            master.apply(new Change(ModifiedPattern.NEW, null, first));
+            master.flush();
+            master.checkpoint();
+            master.apply(new Change(ModifiedPattern.NEW, null, second));
+            master.flush();
+        }
+        // 世代1のスナップショットを置き換えた後、世代0の削除前に停止し、次の書き込み途中のスナップショットが残った状態にする
+        Files.write(directory.resolve("snapshot-0.srf"), new byte[0]);
+        Files.write(directory.resolve("wal-0.log"), new byte[]{1, 2, 3});
+        Files.write(directory.resolve("snapshot-2.srf.tmp"), new byte[]{1, 2, 3});
+
+        try (CheckpointedMaster master = CheckpointedMaster.open(directory)) {
+            assertEquals(1, master.getGeneration());
+            assertEquals(2, master.getSnapshot().size());
+            assertEquals(first, master.getSnapshot().get(first.getPrimaryKey()));
+            assertEquals(second, master.getSnapshot().get(second.getPrimaryKey()));
+        }
+        assertThat(fileNames(directory), hasItems("snapshot-1.srf", "wal-1.log"));
+        assertThat(fileNames(directory), not(hasItem("snapshot-0.srf")));
+        assertThat(fileNames(directory), not(hasItem("wal-0.log")));
+        assertThat(fileNames(directory), not(hasItem("snapshot-2.srf.tmp")));
+    }
+
+    private static Record record(long key, String name, Integer age) {
+        Record record = new Record();
+        record.setPrimaryKey(new UUID(0, key));
+        record.setName(name);
+        record.setAge(age);
+        return record;
+    }
+
+    private static List<String> fileNames(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(e -> e.getFileName().toString()).collect(Collectors.toList());
+        }
+    }
+}